@@ -0,0 +1,43 @@
+package chess;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A CharSequence over part of a byte array, one byte per character. The text formats we read
+ * in bulk (FEN, EPD, PGN) are ASCII, so this lets the parsers work on the raw bytes without
+ * creating Strings. The view is mutable and meant to be reused; only subSequence and
+ * toString allocate.
+ */
+final class AsciiView implements CharSequence {
+
+    private byte[] bytes;
+    private int start;
+    private int length;
+
+    AsciiView set(byte[] bytes, int start, int length) {
+        this.bytes = bytes;
+        this.start = start;
+        this.length = length;
+        return this;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) (bytes[start + index] & 0xFF);
+    }
+
+    @Override
+    public CharSequence subSequence(int from, int to) {
+        return new String(bytes, start + from, to - from, StandardCharsets.ISO_8859_1);
+    }
+
+    @Override
+    public String toString() {
+        return new String(bytes, start, length, StandardCharsets.ISO_8859_1);
+    }
+}
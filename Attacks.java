@@ -0,0 +1,213 @@
+package chess;
+
+/**
+ * Precomputed attack tables used by the bitboard side of the Board.
+ *
+ * Squares are numbered the same way as the Board's grid: square = row * 8 + col,
+ * so a8 is 0, h8 is 7 and h1 is 63. Bit n of a bitboard is square n.
+ * Sliding pieces use "magic" lookup tables: the relevant blockers are multiplied by a
+ * magic number and the top bits of the product index a table of ready-made attack sets.
+ * The magic numbers below were found once by a trial-and-error search; any multiplier
+ * that never sends two blocker sets with different attacks to the same slot works.
+ */
+final class Attacks {
+
+    static final long[] KNIGHT = new long[64];
+    static final long[] KING = new long[64];
+    // PAWN[color][square] = squares a pawn of that color attacks from that square
+    static final long[][] PAWN = new long[2][64];
+    // Lines a Rook / Bishop on the square could move along on an empty board
+    static final long[] ROOK_RAYS = new long[64];
+    static final long[] BISHOP_RAYS = new long[64];
+    // BETWEEN[a][b] = squares strictly between a and b if they share a rank, file or diagonal, else 0
+    static final long[][] BETWEEN = new long[64][64];
+    // LINE[a][b] = the whole line (edge to edge) through a and b, or 0 if they aren't aligned
+    static final long[][] LINE = new long[64][64];
+
+    private static final long[] ROOK_MASK = new long[64];
+    private static final long[] ROOK_MAGIC = {
+        0x1080004008801020L, 0x0840092002C03000L, 0x1900200010400900L, 0x0880100008000480L,
+        0x4200100420080200L, 0x8100020100080400L, 0x0200040110886200L, 0x0200008040220411L,
+        0x0404800084400220L, 0x0000401000402000L, 0x0086001081220440L, 0x0408800800100280L,
+        0x000A001201040820L, 0x8848800200840080L, 0x4001000100040200L, 0x0442000102105084L,
+        0x9080010020804100L, 0x0040404000201009L, 0x0000808010002009L, 0x2200090021D00100L,
+        0x0008008008040080L, 0x0004004002010040L, 0x0011040008015042L, 0x00000A0001768104L,
+        0x0000800080204009L, 0x2010004140002001L, 0x9800200280100080L, 0x1000100080080080L,
+        0x0442000A00049020L, 0x2100040080020080L, 0x0800120400900148L, 0x0010040A00128541L,
+        0x2800804000800030L, 0x1010002000400041L, 0x4000200011004100L, 0x0610008410800800L,
+        0x0400802402800800L, 0xC100020080800400L, 0x0002000802000401L, 0x0182085882000401L,
+        0x0220204000808000L, 0x2860100040024022L, 0x0001002004110040L, 0x99101042000A0020L,
+        0x0004080004008080L, 0x0010040002008080L, 0x2012004881020004L, 0x8300842444820011L,
+        0x0088403882010200L, 0x0820400080210100L, 0x0110910040A00300L, 0x0801100280080480L,
+        0x0242009008200600L, 0x1002000489500200L, 0x0040800200010080L, 0x0091800041000080L,
+        0x0000209300488001L, 0x04C1002414824001L, 0x020020000B001041L, 0x7000100004200901L,
+        0x8002002004100802L, 0x30010002084C0007L, 0x0888221800813004L, 0x4000002840840112L
+    };
+    private static final int[] ROOK_SHIFT = new int[64];
+    private static final int[] ROOK_OFFSET = new int[64];
+    private static final long[] ROOK_TABLE;
+
+    private static final long[] BISHOP_MASK = new long[64];
+    private static final long[] BISHOP_MAGIC = {
+        0xA010041108003100L, 0x006082020A002900L, 0x6810010619200000L, 0x08281A0520000408L,
+        0x0001104001000400L, 0x0018901008048400L, 0x00040A0210245280L, 0x000200210808A402L,
+        0x9140048410821200L, 0x0800091010820041L, 0x20504804832202C0L, 0x0100091401081000L,
+        0x8021011140000012L, 0x0810020804450400L, 0x208B0542109008A2L, 0x0080084A08040204L,
+        0x0040E2A80811244CL, 0x2505022008008108L, 0x0430220100420040L, 0x010A040420220040L,
+        0x1105000290400000L, 0x0093001200822120L, 0x4000A62048043004L, 0x280120048A015004L,
+        0x006090002A020814L, 0x44042000240800D0L, 0x01102800040A4400L, 0x1004080080220040L,
+        0x0001001011004024L, 0x0010044000805040L, 0x0914041200820100L, 0x0004821012821480L,
+        0x0024040500C05021L, 0x0088611002080200L, 0x0116080A00040020L, 0x4000020080080080L,
+        0x2450450140840040L, 0x0000880201484100L, 0x0222020404020092L, 0x8081110600002E00L,
+        0x2842101105000801L, 0x1100809008001025L, 0x00020202221C0400L, 0x0422014022009020L,
+        0x0210046102100C00L, 0xC004008082029102L, 0x00AA461801101200L, 0x0404080080201108L,
+        0x020542108C205002L, 0x0410544804100100L, 0x0040910841100000L, 0x0400200042021100L,
+        0x00004204850400C0L, 0x0200100410A42102L, 0x1040020801210102L, 0x0805040410420000L,
+        0x2884804130100200L, 0x800C262201242000L, 0x1058000194108800L, 0x0014221054420204L,
+        0x0104000012A02200L, 0x0200881003300100L, 0x0140400202840100L, 0x0402020801010201L
+    };
+    private static final int[] BISHOP_SHIFT = new int[64];
+    private static final int[] BISHOP_OFFSET = new int[64];
+    private static final long[] BISHOP_TABLE;
+
+    private static final int[][] ROOK_DIRECTIONS = { {-1, 0}, {1, 0}, {0, -1}, {0, 1} };
+    private static final int[][] BISHOP_DIRECTIONS = { {-1, -1}, {-1, 1}, {1, -1}, {1, 1} };
+
+    static {
+        int[][] knightSteps = { {-2, -1}, {-2, 1}, {-1, -2}, {-1, 2}, {1, -2}, {1, 2}, {2, -1}, {2, 1} };
+        int[][] kingSteps = { {-1, -1}, {-1, 0}, {-1, 1}, {0, -1}, {0, 1}, {1, -1}, {1, 0}, {1, 1} };
+
+        for (int sq = 0; sq < 64; sq++) {
+            int row = sq >>> 3;
+            int col = sq & 7;
+            KNIGHT[sq] = stepAttacks(row, col, knightSteps);
+            KING[sq] = stepAttacks(row, col, kingSteps);
+            // White pawns move "up" the board (towards row 0), black pawns move down
+            PAWN[0][sq] = stepAttacks(row, col, new int[][] { {-1, -1}, {-1, 1} });
+            PAWN[1][sq] = stepAttacks(row, col, new int[][] { {1, -1}, {1, 1} });
+        }
+
+        ROOK_TABLE = initSlider(ROOK_DIRECTIONS, ROOK_MASK, ROOK_MAGIC, ROOK_SHIFT, ROOK_OFFSET);
+        BISHOP_TABLE = initSlider(BISHOP_DIRECTIONS, BISHOP_MASK, BISHOP_MAGIC, BISHOP_SHIFT, BISHOP_OFFSET);
+
+        for (int sq = 0; sq < 64; sq++) {
+            ROOK_RAYS[sq] = rook(sq, 0L);
+            BISHOP_RAYS[sq] = bishop(sq, 0L);
+        }
+
+        for (int a = 0; a < 64; a++) {
+            for (int b = 0; b < 64; b++) {
+                if (a == b) {
+                    continue;
+                }
+                long bBit = 1L << b;
+                long aBit = 1L << a;
+                // Two sliders' attacks on the empty board overlap between a and b and nowhere else
+                if ((ROOK_RAYS[a] & bBit) != 0) {
+                    BETWEEN[a][b] = rook(a, bBit) & rook(b, aBit);
+                    LINE[a][b] = (ROOK_RAYS[a] & ROOK_RAYS[b]) | aBit | bBit;
+                } else if ((BISHOP_RAYS[a] & bBit) != 0) {
+                    BETWEEN[a][b] = bishop(a, bBit) & bishop(b, aBit);
+                    LINE[a][b] = (BISHOP_RAYS[a] & BISHOP_RAYS[b]) | aBit | bBit;
+                }
+            }
+        }
+    }
+
+    private Attacks() {
+    }
+
+    static long rook(int sq, long occupied) {
+        int index = (int) (((occupied & ROOK_MASK[sq]) * ROOK_MAGIC[sq]) >>> ROOK_SHIFT[sq]);
+        return ROOK_TABLE[ROOK_OFFSET[sq] + index];
+    }
+
+    static long bishop(int sq, long occupied) {
+        int index = (int) (((occupied & BISHOP_MASK[sq]) * BISHOP_MAGIC[sq]) >>> BISHOP_SHIFT[sq]);
+        return BISHOP_TABLE[BISHOP_OFFSET[sq] + index];
+    }
+
+    static long queen(int sq, long occupied) {
+        return rook(sq, occupied) | bishop(sq, occupied);
+    }
+
+    private static long stepAttacks(int row, int col, int[][] steps) {
+        long attacks = 0L;
+        for (int[] step : steps) {
+            int r = row + step[0];
+            int c = col + step[1];
+            if (r >= 0 && r < 8 && c >= 0 && c < 8) {
+                attacks |= 1L << (r * 8 + c);
+            }
+        }
+        return attacks;
+    }
+
+    /**
+     * Walks each ray until it leaves the board or hits a blocker (the blocker itself is attacked).
+     * Only used while building the tables.
+     */
+    private static long slowSliderAttacks(int sq, long occupied, int[][] directions) {
+        long attacks = 0L;
+        for (int[] dir : directions) {
+            int r = (sq >>> 3) + dir[0];
+            int c = (sq & 7) + dir[1];
+            while (r >= 0 && r < 8 && c >= 0 && c < 8) {
+                long bit = 1L << (r * 8 + c);
+                attacks |= bit;
+                if ((occupied & bit) != 0) {
+                    break;
+                }
+                r += dir[0];
+                c += dir[1];
+            }
+        }
+        return attacks;
+    }
+
+    /**
+     * The squares whose occupancy matters for a slider on sq. The last square of each ray
+     * is left out, because a piece there never changes which squares are attacked.
+     */
+    private static long relevantMask(int sq, int[][] directions) {
+        long mask = 0L;
+        for (int[] dir : directions) {
+            int r = (sq >>> 3) + dir[0];
+            int c = (sq & 7) + dir[1];
+            while (r + dir[0] >= 0 && r + dir[0] < 8 && c + dir[1] >= 0 && c + dir[1] < 8) {
+                mask |= 1L << (r * 8 + c);
+                r += dir[0];
+                c += dir[1];
+            }
+        }
+        return mask;
+    }
+
+    private static long[] initSlider(int[][] directions, long[] masks, long[] magics, int[] shifts, int[] offsets) {
+        // Every square gets its own slice of one shared table, sized by its number of relevant blockers
+        int total = 0;
+        for (int sq = 0; sq < 64; sq++) {
+            masks[sq] = relevantMask(sq, directions);
+            offsets[sq] = total;
+            total += 1 << Long.bitCount(masks[sq]);
+        }
+
+        long[] table = new long[total];
+        for (int sq = 0; sq < 64; sq++) {
+            long mask = masks[sq];
+            int bits = Long.bitCount(mask);
+            int size = 1 << bits;
+
+            shifts[sq] = 64 - bits;
+
+            // Enumerate every subset of the mask (Carry-Rippler trick) and store its true attack set
+            long subset = 0L;
+            for (int i = 0; i < size; i++) {
+                int index = (int) ((subset * magics[sq]) >>> shifts[sq]);
+                table[offsets[sq] + index] = slowSliderAttacks(sq, subset, directions);
+                subset = (subset - mask) & mask;
+            }
+        }
+        return table;
+    }
+}
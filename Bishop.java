@@ -2,19 +2,19 @@ package chess;
 
 public class Bishop extends Piece {
 
-    public Bishop(Chess.Player player) {
-        super(player, player == Chess.Player.white ? "wB" : "bB");
+    Bishop(Chess.Player player) {
+        super(player, player == Chess.Player.white ? "wB" : "bB", BISHOP);
     }
 
     @Override
-    public boolean isValidMove(int startRow, int startCol, int endRow, int endCol, Piece[][] board) {
-        // 1. Must move in a perfect diagonal
-        if (Math.abs(startRow - endRow) != Math.abs(startCol - endCol)) {
+    public boolean isValidMove(int startRow, int startCol, int endRow, int endCol, Board board) {
+        // 1. Must move in a perfect diagonal (the Bishop's diagonals from each square are precomputed)
+        if ((Attacks.BISHOP_RAYS[startRow * 8 + startCol] & (1L << (endRow * 8 + endCol))) == 0) {
             return false;
         }
 
         // 2. Cannot capture friendly pieces
-        Piece destinationPiece = board[endRow][endCol];
+        Piece destinationPiece = board.getPiece(endRow, endCol);
         if (destinationPiece != null && destinationPiece.getPlayer() == this.player) {
             return false;
         }
@@ -1,12 +1,139 @@
 package chess;
 
+import java.util.Arrays;
+
 public class Board {
     // The 8x8 grid holding our Piece objects. Null means the square is empty.
+    // This is kept in sync with the bitboards below and acts as a read-only view for callers.
     private Piece[][] grid;
 
+    // --- Bitboards: bit (row * 8 + col) is set when that square holds the piece ---
+    // One bitboard per (color, type), indexed color * 6 + type
+    private final long[] pieces = new long[12];
+    // All pieces of each color (0 = white, 1 = black)
+    private final long[] occupancy = new long[2];
+    // Every occupied square
+    private long occupied;
+    // Byte per square: 0 if empty, else color * 6 + type + 1 (a compact copy of the grid)
+    private final byte[] mailbox = new byte[64];
+
+    // Castling rights, one bit each
+    public static final int WHITE_KINGSIDE = 1;
+    public static final int WHITE_QUEENSIDE = 2;
+    public static final int BLACK_KINGSIDE = 4;
+    public static final int BLACK_QUEENSIDE = 8;
+
+    // CASTLING_MASK[sq] is ANDed into the rights whenever a move starts or ends on sq,
+    // so moving a King or Rook (or capturing a Rook at home) drops the matching rights
+    private static final int[] CASTLING_MASK = new int[64];
+    static {
+        Arrays.fill(CASTLING_MASK, 15);
+        CASTLING_MASK[0] = ~BLACK_QUEENSIDE & 15;               // a8
+        CASTLING_MASK[4] = ~(BLACK_KINGSIDE | BLACK_QUEENSIDE) & 15; // e8
+        CASTLING_MASK[7] = ~BLACK_KINGSIDE & 15;                // h8
+        CASTLING_MASK[56] = ~WHITE_QUEENSIDE & 15;              // a1
+        CASTLING_MASK[60] = ~(WHITE_KINGSIDE | WHITE_QUEENSIDE) & 15; // e1
+        CASTLING_MASK[63] = ~WHITE_KINGSIDE & 15;               // h1
+    }
+
+    // Whose turn it is in this position
+    private Chess.Player sideToMove = Chess.Player.white;
+    private int castlingRights = WHITE_KINGSIDE | WHITE_QUEENSIDE | BLACK_KINGSIDE | BLACK_QUEENSIDE;
+    // Square a pawn can capture onto en passant (the one skipped by a double step), or -1
+    private int epSquare = -1;
+    // Plies since the last capture or pawn move
+    private int halfmoveClock;
+    // Starts at 1 and goes up after each Black move, as in FEN
+    private int fullmoveNumber = 1;
+
+    // Zobrist key of the position, updated incrementally by every change (see Zobrist)
+    private long zobristKey;
+
+    // --- Undo stack for makeMove/unmakeMove, one entry per move played ---
+    // Kept small because a server may hold tens of thousands of boards; the stack grows on demand
+    private static final int INITIAL_UNDO_CAPACITY = 256;
+    private int undoCount;
+    private int[] undoMove = new int[INITIAL_UNDO_CAPACITY];
+    private Piece[] undoMoved = new Piece[INITIAL_UNDO_CAPACITY];
+    private Piece[] undoCaptured = new Piece[INITIAL_UNDO_CAPACITY];
+    private int[] undoCastling = new int[INITIAL_UNDO_CAPACITY];
+    private int[] undoEpSquare = new int[INITIAL_UNDO_CAPACITY];
+    private int[] undoHalfmove = new int[INITIAL_UNDO_CAPACITY];
+    private long[] undoKey = new long[INITIAL_UNDO_CAPACITY];
+    // Keys of the positions before the undo stack that can still repeat, oldest first: a copy
+    // gets them from its original so a search on the copy still sees the game's repetitions
+    private long[] earlierKeys = NO_KEYS;
+    private static final long[] NO_KEYS = new long[0];
+
+    // --- Legality masks for one side, filled in by computeLegalityMasks ---
+    private int maskKingSq;
+    // Enemy pieces giving check
+    private long checkers;
+    // Squares a non-King move must end on: anywhere when not in check, the checker or a square
+    // between it and the King when in single check, nowhere in double check
+    private long checkMask;
+    // Our pieces that are pinned to our King (each may only move along its line to the King)
+    private long pinned;
+    // Every square the enemy attacks, computed with our King taken off the board so that
+    // stepping back along a slider's line is seen as unsafe
+    private long kingDanger;
+
+    // Told about every piece put on or taken off a square, or null (see PieceListener)
+    private PieceListener listener;
+
+    // Scratch move list for internal queries like isCheckmate, so they don't allocate
+    private final int[] scratchMoves = new int[Move.MAX_MOVES];
+    // Gains per capture in see (32 pieces can't make more captures on one square)
+    private final int[] seeGains = new int[32];
+
     public Board() {
+        this(true);
+    }
+
+    // The start position, or an empty board (no pieces, no castling rights) for fromFen to
+    // fill in without first setting up and hashing a position it throws away
+    private Board(boolean startPosition) {
+        grid = new Piece[8][8];
+        if (startPosition) {
+            setupBoard();
+            zobristKey ^= Zobrist.CASTLING[castlingRights];
+        } else {
+            castlingRights = 0;
+        }
+    }
+
+    /**
+     * Copy constructor: an independent board with the same position, for example one per
+     * search thread. Pieces are shared, immutable objects, so this is just array copies.
+     * The undo history is not copied, so moves made before the copy can't be taken back on it;
+     * the keys needed to detect repetitions are.
+     */
+    public Board(Board other) {
         grid = new Piece[8][8];
-        setupBoard();
+        for (int row = 0; row < 8; row++) {
+            System.arraycopy(other.grid[row], 0, grid[row], 0, 8);
+        }
+        System.arraycopy(other.pieces, 0, pieces, 0, pieces.length);
+        System.arraycopy(other.occupancy, 0, occupancy, 0, occupancy.length);
+        occupied = other.occupied;
+        System.arraycopy(other.mailbox, 0, mailbox, 0, mailbox.length);
+        sideToMove = other.sideToMove;
+        castlingRights = other.castlingRights;
+        epSquare = other.epSquare;
+        halfmoveClock = other.halfmoveClock;
+        fullmoveNumber = other.fullmoveNumber;
+        zobristKey = other.zobristKey;
+        int keys = other.repetitionLimit();
+        if (keys > 0) {
+            earlierKeys = new long[keys];
+            for (int back = 1; back <= keys; back++) {
+                earlierKeys[keys - back] = other.keyBack(back);
+            }
+        }
+    }
+
+    public Board copy() {
+        return new Board(this);
     }
 
     /**
@@ -15,32 +142,251 @@ public class Board {
      */
     private void setupBoard() {
         // --- Black Pieces (Row 0 and 1) ---
-        grid[0][0] = new Rook(Chess.Player.black);
-        grid[0][1] = new Knight(Chess.Player.black);
-        grid[0][2] = new Bishop(Chess.Player.black);
-        grid[0][3] = new Queen(Chess.Player.black);
-        grid[0][4] = new King(Chess.Player.black);
-        grid[0][5] = new Bishop(Chess.Player.black);
-        grid[0][6] = new Knight(Chess.Player.black);
-        grid[0][7] = new Rook(Chess.Player.black);
+        setPiece(0, 0, Piece.of(Chess.Player.black, Piece.ROOK));
+        setPiece(0, 1, Piece.of(Chess.Player.black, Piece.KNIGHT));
+        setPiece(0, 2, Piece.of(Chess.Player.black, Piece.BISHOP));
+        setPiece(0, 3, Piece.of(Chess.Player.black, Piece.QUEEN));
+        setPiece(0, 4, Piece.of(Chess.Player.black, Piece.KING));
+        setPiece(0, 5, Piece.of(Chess.Player.black, Piece.BISHOP));
+        setPiece(0, 6, Piece.of(Chess.Player.black, Piece.KNIGHT));
+        setPiece(0, 7, Piece.of(Chess.Player.black, Piece.ROOK));
         
         for (int col = 0; col < 8; col++) {
-             grid[1][col] = new Pawn(Chess.Player.black);
+             setPiece(1, col, Piece.of(Chess.Player.black, Piece.PAWN));
         }
 
         // --- White Pieces (Row 6 and 7) ---
         for (int col = 0; col < 8; col++) {
-             grid[6][col] = new Pawn(Chess.Player.white);
+             setPiece(6, col, Piece.of(Chess.Player.white, Piece.PAWN));
+        }
+
+        setPiece(7, 0, Piece.of(Chess.Player.white, Piece.ROOK));
+        setPiece(7, 1, Piece.of(Chess.Player.white, Piece.KNIGHT));
+        setPiece(7, 2, Piece.of(Chess.Player.white, Piece.BISHOP));
+        setPiece(7, 3, Piece.of(Chess.Player.white, Piece.QUEEN));
+        setPiece(7, 4, Piece.of(Chess.Player.white, Piece.KING));
+        setPiece(7, 5, Piece.of(Chess.Player.white, Piece.BISHOP));
+        setPiece(7, 6, Piece.of(Chess.Player.white, Piece.KNIGHT));
+        setPiece(7, 7, Piece.of(Chess.Player.white, Piece.ROOK));
+    }
+
+    /**
+     * Removes every piece, leaving an empty board (used when setting up custom positions).
+     */
+    public void clear() {
+        for (int row = 0; row < 8; row++) {
+            for (int col = 0; col < 8; col++) {
+                setPiece(row, col, null);
+            }
         }
+        sideToMove = Chess.Player.white;
+        castlingRights = 0;
+        epSquare = -1;
+        halfmoveClock = 0;
+        fullmoveNumber = 1;
+        undoCount = 0;
+        earlierKeys = NO_KEYS;
+        zobristKey = 0L; // Nothing left on the board to hash
+    }
+
+    public static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    // FEN letters indexed by color * 6 + type
+    private static final String FEN_PIECES = "PNBRQKpnbrqk";
+
+    /**
+     * Creates a board from a FEN string, e.g.
+     * "rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1".
+     * The halfmove clock and move number may be left out (as in EPD).
+     * @throws IllegalArgumentException if the string is not valid FEN
+     */
+    public static Board fromFen(CharSequence fen) {
+        Board board = new Board(false);
+        board.setFen(fen);
+        return board;
+    }
 
-        grid[7][0] = new Rook(Chess.Player.white);
-        grid[7][1] = new Knight(Chess.Player.white);
-        grid[7][2] = new Bishop(Chess.Player.white);
-        grid[7][3] = new Queen(Chess.Player.white);
-        grid[7][4] = new King(Chess.Player.white);
-        grid[7][5] = new Bishop(Chess.Player.white);
-        grid[7][6] = new Knight(Chess.Player.white);
-        grid[7][7] = new Rook(Chess.Player.white);
+    /**
+     * Replaces the position on this board with the one in the FEN string, so one Board can be
+     * reused for many positions. The undo history is cleared.
+     * @throws IllegalArgumentException if the string is not valid FEN (the board is then empty)
+     */
+    public void setFen(CharSequence fen) {
+        int end = readFen(fen, 0, fen.length());
+        for (; end < fen.length(); end++) {
+            if (fen.charAt(end) != ' ' && fen.charAt(end) != '\t') {
+                throw new IllegalArgumentException("Unexpected text after FEN: " + fen);
+            }
+        }
+    }
+
+    /**
+     * Reads a FEN (or the four position fields of an EPD line) from text[start, end) onto this
+     * board without allocating, and returns the index just past what was read. Anything after
+     * that, such as EPD operations, is left for the caller.
+     */
+    int readFen(CharSequence text, int start, int end) {
+        clear();
+        int i = skipBlanks(text, start, end);
+
+        // 1. Piece placement, from row 0 (rank 8) down to row 7 (rank 1)
+        int row = 0;
+        int col = 0;
+        for (; i < end && text.charAt(i) != ' ' && text.charAt(i) != '\t'; i++) {
+            char ch = text.charAt(i);
+            if (ch == '/') {
+                if (col != 8 || ++row > 7) {
+                    throw badFen(text, start, end, "bad rank " + (8 - row));
+                }
+                col = 0;
+            } else if (ch >= '1' && ch <= '8') {
+                col += ch - '0';
+                if (col > 8) {
+                    throw badFen(text, start, end, "rank " + (8 - row) + " is too long");
+                }
+            } else {
+                int index = FEN_PIECES.indexOf(ch);
+                if (index < 0 || col > 7) {
+                    throw badFen(text, start, end, "unexpected '" + ch + "'");
+                }
+                setPiece(row, col++, Piece.of(index < 6 ? Chess.Player.white : Chess.Player.black, index % 6));
+            }
+        }
+        if (row != 7 || col != 8) {
+            throw badFen(text, start, end, "placement doesn't cover 8 ranks");
+        }
+
+        // 2. Side to move
+        i = skipBlanks(text, i, end);
+        if (i == end || (text.charAt(i) != 'w' && text.charAt(i) != 'b')) {
+            throw badFen(text, start, end, "side to move must be w or b");
+        }
+        setSideToMove(text.charAt(i++) == 'w' ? Chess.Player.white : Chess.Player.black);
+
+        // 3. Castling rights
+        i = skipBlanks(text, i, end);
+        int rights = 0;
+        if (i < end && text.charAt(i) == '-') {
+            i++;
+        } else {
+            for (; i < end && text.charAt(i) != ' ' && text.charAt(i) != '\t'; i++) {
+                int bit = "KQkq".indexOf(text.charAt(i));
+                if (bit < 0) {
+                    throw badFen(text, start, end, "bad castling rights");
+                }
+                rights |= 1 << bit;
+            }
+            if (rights == 0) {
+                throw badFen(text, start, end, "missing castling rights");
+            }
+        }
+        setCastlingRights(rights);
+
+        // 4. En passant square (only on the row just behind a pawn that double stepped)
+        i = skipBlanks(text, i, end);
+        if (i < end && text.charAt(i) == '-') {
+            i++;
+        } else {
+            int sq = MoveParser.square(text, i, end);
+            if (sq < 0 || ((sq >>> 3) != 2 && (sq >>> 3) != 5)) {
+                throw badFen(text, start, end, "bad en passant square");
+            }
+            setEnPassantSquare(sq);
+            i += 2;
+        }
+
+        // 5 and 6. Optional halfmove clock and move number
+        int afterPosition = i;
+        i = skipBlanks(text, i, end);
+        if (i < end && isDigit(text.charAt(i))) {
+            int halfmoves = 0;
+            for (; i < end && isDigit(text.charAt(i)); i++) {
+                halfmoves = halfmoves * 10 + text.charAt(i) - '0';
+            }
+            halfmoveClock = halfmoves;
+            afterPosition = i;
+            i = skipBlanks(text, i, end);
+            if (i < end && isDigit(text.charAt(i))) {
+                int moves = 0;
+                for (; i < end && isDigit(text.charAt(i)); i++) {
+                    moves = moves * 10 + text.charAt(i) - '0';
+                }
+                fullmoveNumber = Math.max(1, moves);
+                afterPosition = i;
+            }
+        }
+        return afterPosition;
+    }
+
+    private IllegalArgumentException badFen(CharSequence text, int start, int end, String reason) {
+        clear(); // Don't leave half a position behind
+        return new IllegalArgumentException("Invalid FEN (" + reason + "): " + text.subSequence(start, end));
+    }
+
+    private static int skipBlanks(CharSequence text, int i, int end) {
+        while (i < end && (text.charAt(i) == ' ' || text.charAt(i) == '\t')) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * The position as a FEN string.
+     */
+    public String toFen() {
+        StringBuilder sb = new StringBuilder(90);
+        appendFen(sb);
+        return sb.toString();
+    }
+
+    /**
+     * Writes the position as FEN into a caller-owned builder (for writing many positions).
+     */
+    public void appendFen(StringBuilder sb) {
+        for (int row = 0; row < 8; row++) {
+            int empty = 0;
+            for (int col = 0; col < 8; col++) {
+                int content = mailbox[row * 8 + col];
+                if (content == 0) {
+                    empty++;
+                    continue;
+                }
+                if (empty > 0) {
+                    sb.append((char) ('0' + empty));
+                    empty = 0;
+                }
+                sb.append(FEN_PIECES.charAt(content - 1));
+            }
+            if (empty > 0) {
+                sb.append((char) ('0' + empty));
+            }
+            if (row < 7) {
+                sb.append('/');
+            }
+        }
+
+        sb.append(sideToMove == Chess.Player.white ? " w " : " b ");
+        if (castlingRights == 0) {
+            sb.append('-');
+        } else {
+            for (int bit = 0; bit < 4; bit++) {
+                if ((castlingRights & (1 << bit)) != 0) {
+                    sb.append("KQkq".charAt(bit));
+                }
+            }
+        }
+
+        sb.append(' ');
+        if (epSquare < 0) {
+            sb.append('-');
+        } else {
+            sb.append((char) ('a' + (epSquare & 7))).append((char) ('8' - (epSquare >>> 3)));
+        }
+        sb.append(' ').append(halfmoveClock).append(' ').append(fullmoveNumber);
     }
 
     public Piece getPiece(int row, int col) {
@@ -50,53 +396,507 @@ public class Board {
         return null; // Out of bounds
     }
 
+    /**
+     * Puts a piece on a square (or clears it when piece is null), keeping the grid
+     * and the bitboards in sync. Every change to the board should go through here.
+     */
+    public void setPiece(int row, int col, Piece piece) {
+        int sq = row * 8 + col;
+        long bit = 1L << sq;
+
+        Piece old = grid[row][col];
+        if (old != null) {
+            int index = old.getColor() * 6 + old.getType();
+            zobristKey ^= Zobrist.PIECE[index][sq];
+            pieces[index] &= ~bit;
+            occupancy[old.getColor()] &= ~bit;
+            occupied &= ~bit;
+            if (listener != null) {
+                listener.pieceRemoved(index, sq);
+            }
+        }
+
+        grid[row][col] = piece;
+        mailbox[sq] = 0;
+        if (piece != null) {
+            int index = piece.getColor() * 6 + piece.getType();
+            mailbox[sq] = (byte) (index + 1);
+            zobristKey ^= Zobrist.PIECE[index][sq];
+            pieces[index] |= bit;
+            occupancy[piece.getColor()] |= bit;
+            occupied |= bit;
+            if (listener != null) {
+                listener.pieceAdded(index, sq);
+            }
+        }
+    }
+
+    /**
+     * Receives every change setPiece makes: moves, captures, castling, promotion, their undoing
+     * and position setup all come down to pieces added to and removed from squares.
+     */
+    public interface PieceListener {
+        // piece is color * 6 + type, as in the bitboards
+        void pieceAdded(int piece, int sq);
+
+        void pieceRemoved(int piece, int sq);
+    }
+
+    /**
+     * Sets the one listener told about piece changes on this board (null for none).
+     * Copies of the board don't inherit it.
+     */
+    public void setPieceListener(PieceListener listener) {
+        this.listener = listener;
+    }
+
     /**
      * Moves a piece on the board without checking rules (rule checking happens before this is called).
      */
     public void movePiece(int startRow, int startCol, int endRow, int endCol) {
-        grid[endRow][endCol] = grid[startRow][startCol];
-        grid[startRow][startCol] = null;
-        
-        // Mark the piece as having moved (useful for Pawns, Rooks, and Kings later)
-        if (grid[endRow][endCol] != null) {
-            grid[endRow][endCol].setMoved(true);
+        Piece moving = grid[startRow][startCol];
+        setPiece(startRow, startCol, null);
+        setPiece(endRow, endCol, moving);
+    }
+
+    /**
+     * Bitboard of one piece type for one side (see the type constants in Piece).
+     */
+    public long getPieces(Chess.Player player, int type) {
+        return pieces[player.ordinal() * 6 + type];
+    }
+
+    /**
+     * Bitboard of every square occupied by the given side.
+     */
+    public long getOccupancy(Chess.Player player) {
+        return occupancy[player.ordinal()];
+    }
+
+    public long getOccupied() {
+        return occupied;
+    }
+
+    /**
+     * Contents of square sq (row * 8 + col): 0 if empty, else color * 6 + type + 1.
+     */
+    public int getMailbox(int sq) {
+        return mailbox[sq];
+    }
+
+    /**
+     * Copies the whole board, one byte per square as in getMailbox, into dest (length 64).
+     */
+    public void copyMailbox(byte[] dest) {
+        System.arraycopy(mailbox, 0, dest, 0, 64);
+    }
+
+    public Chess.Player getSideToMove() {
+        return sideToMove;
+    }
+
+    public void setSideToMove(Chess.Player sideToMove) {
+        if (sideToMove != this.sideToMove) {
+            // The en passant part of the key depends on whose turn it is
+            zobristKey ^= enPassantKey(epSquare) ^ Zobrist.SIDE;
+            this.sideToMove = sideToMove;
+            zobristKey ^= enPassantKey(epSquare);
         }
     }
+
+    public int getCastlingRights() {
+        return castlingRights;
+    }
+
+    public void setCastlingRights(int castlingRights) {
+        zobristKey ^= Zobrist.CASTLING[this.castlingRights] ^ Zobrist.CASTLING[castlingRights];
+        this.castlingRights = castlingRights;
+    }
+
+    public int getEnPassantSquare() {
+        return epSquare;
+    }
+
     /**
-     * Checks if the specified player's King is currently under attack.
+     * Sets the en passant target square (the one skipped by a double step), or -1 for none.
      */
-    public boolean isInCheck(Chess.Player player) {
-        int kingRow = -1;
-        int kingCol = -1;
+    public void setEnPassantSquare(int sq) {
+        zobristKey ^= enPassantKey(epSquare);
+        epSquare = sq;
+        zobristKey ^= enPassantKey(epSquare);
+    }
 
-        // 1. Find the King's coordinates
-        for (int r = 0; r < 8; r++) {
-            for (int c = 0; c < 8; c++) {
-                Piece p = grid[r][c];
-                if (p != null && p instanceof King && p.getPlayer() == player) {
-                    kingRow = r;
-                    kingCol = c;
-                    break;
-                }
+    /**
+     * 64-bit Zobrist key of the current position: pieces, side to move, castling rights and
+     * the en passant file (only when the side to move has a pawn that can capture there).
+     * Equal positions have equal keys; it is maintained incrementally, so reading it is free.
+     */
+    public long getZobristKey() {
+        return zobristKey;
+    }
+
+    /**
+     * Recomputes the Zobrist key from scratch. Slow; meant for checking the incremental key.
+     */
+    public long computeZobristKey() {
+        long key = 0L;
+        for (int index = 0; index < 12; index++) {
+            long bb = pieces[index];
+            while (bb != 0) {
+                key ^= Zobrist.PIECE[index][Long.numberOfTrailingZeros(bb)];
+                bb &= bb - 1;
             }
-            if (kingRow != -1) break; // Break outer loop once found
         }
+        if (sideToMove == Chess.Player.black) {
+            key ^= Zobrist.SIDE;
+        }
+        return key ^ Zobrist.CASTLING[castlingRights] ^ enPassantKey(epSquare);
+    }
 
-        // 2. Iterate through the board to see if any opponent can attack those coordinates
-        for (int r = 0; r < 8; r++) {
-            for (int c = 0; c < 8; c++) {
-                Piece p = grid[r][c];
-                // If it's an opponent's piece
-                if (p != null && p.getPlayer() != player) {
-                    // Ask the piece if it can legally move to the King's square
-                    if (p.isValidMove(r, c, kingRow, kingCol, grid)) {
-                        return true; // The King is in check!
-                    }
-                }
+    /**
+     * Key for the en passant square, or 0 when no pawn of the side to move attacks it
+     * (an en passant square nobody can use doesn't make the position different).
+     */
+    private long enPassantKey(int epSq) {
+        if (epSq < 0) {
+            return 0L;
+        }
+        int us = sideToMove.ordinal();
+        // Our pawns that attack epSq stand where an enemy pawn on epSq would attack
+        if ((Attacks.PAWN[us ^ 1][epSq] & pieces[us * 6 + Piece.PAWN]) == 0) {
+            return 0L;
+        }
+        return Zobrist.EP_FILE[epSq & 7];
+    }
+
+    public int getHalfmoveClock() {
+        return halfmoveClock;
+    }
+
+    public void setHalfmoveClock(int halfmoveClock) {
+        this.halfmoveClock = halfmoveClock;
+    }
+
+    public int getFullmoveNumber() {
+        return fullmoveNumber;
+    }
+
+    /**
+     * Builds the packed move for a piece going from one square to another in this position,
+     * working out the flags (capture, en passant, castling, double step) from the board.
+     * A pawn reaching the last row promotes to the given type, or to a Queen when it is 0.
+     * No legality checking is done here.
+     */
+    public int encodeMove(int from, int to, int promotion) {
+        Piece piece = grid[from >>> 3][from & 7];
+        Piece target = grid[to >>> 3][to & 7];
+        int flags = target != null ? Move.CAPTURE : 0;
+
+        if (piece instanceof Pawn) {
+            if ((from & 7) != (to & 7) && target == null) {
+                flags |= Move.CAPTURE | Move.EN_PASSANT;
+            }
+            if (Math.abs(from - to) == 16) {
+                flags |= Move.DOUBLE_PUSH;
+            }
+            int toRow = to >>> 3;
+            if (toRow == 0 || toRow == 7) {
+                return Move.of(from, to, flags, promotion == 0 ? Piece.QUEEN : promotion);
+            }
+        } else if (piece instanceof King && Math.abs(from - to) == 2) {
+            flags |= Move.CASTLE;
+        }
+        return Move.of(from, to, flags);
+    }
+
+    /**
+     * Plays a move (as produced by the move generator or encodeMove) and pushes what is needed
+     * to take it back onto the undo stack. Handles the castling Rook, en passant captures,
+     * promotion, castling rights, the en passant square and the halfmove clock.
+     * No legality checking is done here.
+     */
+    public void makeMove(int move) {
+        if (undoCount == undoMove.length) {
+            growUndoStack();
+        }
+        int from = Move.from(move);
+        int to = Move.to(move);
+        Piece piece = grid[from >>> 3][from & 7];
+
+        int ply = undoCount++;
+        undoMove[ply] = move;
+        undoMoved[ply] = piece;
+        undoCastling[ply] = castlingRights;
+        undoEpSquare[ply] = epSquare;
+        undoHalfmove[ply] = halfmoveClock;
+        undoKey[ply] = zobristKey;
+
+        // The right to capture en passant expires after one turn
+        zobristKey ^= enPassantKey(epSquare);
+        epSquare = -1;
+
+        Piece captured;
+        if (Move.isEnPassant(move)) {
+            // The captured pawn sits beside us, on the start row
+            int capturedSq = (from & ~7) | (to & 7);
+            captured = grid[capturedSq >>> 3][capturedSq & 7];
+            setPiece(capturedSq >>> 3, capturedSq & 7, null);
+        } else {
+            captured = grid[to >>> 3][to & 7];
+        }
+        undoCaptured[ply] = captured;
+
+        int promotion = Move.promotion(move);
+        setPiece(from >>> 3, from & 7, null);
+        setPiece(to >>> 3, to & 7, promotion != 0 ? Piece.of(piece.getPlayer(), promotion) : piece);
+
+        if (Move.isCastle(move)) {
+            int row = from >>> 3;
+            Piece rook = grid[row][to > from ? 7 : 0];
+            setPiece(row, to > from ? 7 : 0, null);
+            setPiece(row, to > from ? 5 : 3, rook);
+        }
+
+        halfmoveClock = (captured != null || piece instanceof Pawn) ? 0 : halfmoveClock + 1;
+
+        int rights = castlingRights & CASTLING_MASK[from] & CASTLING_MASK[to];
+        zobristKey ^= Zobrist.CASTLING[castlingRights] ^ Zobrist.CASTLING[rights];
+        castlingRights = rights;
+
+        if (sideToMove == Chess.Player.black) {
+            fullmoveNumber++;
+        }
+        sideToMove = (sideToMove == Chess.Player.white) ? Chess.Player.black : Chess.Player.white;
+        zobristKey ^= Zobrist.SIDE;
+
+        // Set after the side flips: the en passant key depends on the opponent's pawns
+        if (Move.isDoublePush(move)) {
+            epSquare = (from + to) >>> 1;
+            zobristKey ^= enPassantKey(epSquare);
+        }
+    }
+
+    /**
+     * Takes back the last move played with makeMove, restoring the position exactly.
+     */
+    public void unmakeMove() {
+        int ply = --undoCount;
+        int move = undoMove[ply];
+        int from = Move.from(move);
+        int to = Move.to(move);
+
+        sideToMove = (sideToMove == Chess.Player.white) ? Chess.Player.black : Chess.Player.white;
+        if (sideToMove == Chess.Player.black) {
+            fullmoveNumber--;
+        }
+        castlingRights = undoCastling[ply];
+        halfmoveClock = undoHalfmove[ply];
+
+        if (Move.isCastle(move)) {
+            int row = from >>> 3;
+            Piece rook = grid[row][to > from ? 5 : 3];
+            setPiece(row, to > from ? 5 : 3, null);
+            setPiece(row, to > from ? 7 : 0, rook);
+        }
+
+        Piece piece = undoMoved[ply];
+        setPiece(from >>> 3, from & 7, piece);
+        if (Move.isEnPassant(move)) {
+            setPiece(to >>> 3, to & 7, null);
+            setPiece(from >>> 3, to & 7, undoCaptured[ply]);
+        } else {
+            setPiece(to >>> 3, to & 7, undoCaptured[ply]);
+        }
+
+        epSquare = undoEpSquare[ply];
+        zobristKey = undoKey[ply]; // Cheaper than reversing each XOR
+    }
+
+    /**
+     * Number of moves on the undo stack.
+     */
+    public int getUndoDepth() {
+        return undoCount;
+    }
+
+    /**
+     * How many times the current position occurred earlier in the game, as far as this board
+     * knows it (the moves on the undo stack, and those before a copy was made). Saved keys are
+     * compared only back to the last capture or pawn move, since nothing before one can come
+     * again, and only every second ply, since the side to move must match: a few long compares
+     * per call however long the game is.
+     */
+    public int getRepetitionCount() {
+        int count = 0;
+        int limit = repetitionLimit();
+        for (int back = 4; back <= limit; back += 2) {
+            if (keyBack(back) == zobristKey) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Whether the current position occurred before (see getRepetitionCount). Enough for a
+     * search to score the position as a draw: the side that repeated can do it again.
+     */
+    public boolean isRepetition() {
+        int limit = repetitionLimit();
+        for (int back = 4; back <= limit; back += 2) {
+            if (keyBack(back) == zobristKey) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // How many plies back a position could repeat and its key is known
+    private int repetitionLimit() {
+        return Math.min(halfmoveClock, undoCount + earlierKeys.length);
+    }
+
+    // Key of the position the given number of plies ago (1 <= back <= repetitionLimit)
+    private long keyBack(int back) {
+        return back <= undoCount ? undoKey[undoCount - back] : earlierKeys[earlierKeys.length - back + undoCount];
+    }
+
+    /**
+     * Whether the current position is on the board for the third time.
+     */
+    public boolean isThreefoldRepetition() {
+        return getRepetitionCount() >= 2;
+    }
+
+    /**
+     * Whether fifty moves by each side went by without a capture or a pawn move.
+     */
+    public boolean isFiftyMoveDraw() {
+        return halfmoveClock >= 100;
+    }
+
+    // Only reached by long games (or a deep search late in one); the arrays double each time
+    private void growUndoStack() {
+        int capacity = undoMove.length * 2;
+        undoMove = Arrays.copyOf(undoMove, capacity);
+        undoMoved = Arrays.copyOf(undoMoved, capacity);
+        undoCaptured = Arrays.copyOf(undoCaptured, capacity);
+        undoCastling = Arrays.copyOf(undoCastling, capacity);
+        undoEpSquare = Arrays.copyOf(undoEpSquare, capacity);
+        undoHalfmove = Arrays.copyOf(undoHalfmove, capacity);
+        undoKey = Arrays.copyOf(undoKey, capacity);
+    }
+
+    /**
+     * Checks if any piece of the attacking side hits the given square (row * 8 + col).
+     */
+    public boolean isSquareAttacked(int sq, Chess.Player attacker) {
+        return attackersTo(sq, attacker.ordinal(), occupied) != 0;
+    }
+
+    /**
+     * All pieces of the given color that attack sq, with sliders blocked by occ.
+     * Instead of asking every enemy piece, we look outwards from the square: a knight on
+     * the square would see exactly the knights that attack it, and so on for every type.
+     */
+    private long attackersTo(int sq, int color, long occ) {
+        int base = color * 6;
+        long queens = pieces[base + Piece.QUEEN];
+        // A pawn attacks sq if a pawn of the OTHER color standing on sq would attack it back
+        return (Attacks.PAWN[color ^ 1][sq] & pieces[base + Piece.PAWN])
+             | (Attacks.KNIGHT[sq] & pieces[base + Piece.KNIGHT])
+             | (Attacks.KING[sq] & pieces[base + Piece.KING])
+             | (Attacks.bishop(sq, occ) & (pieces[base + Piece.BISHOP] | queens))
+             | (Attacks.rook(sq, occ) & (pieces[base + Piece.ROOK] | queens));
+    }
+
+    // Exchange values by piece type; the King's is large enough that trading it never pays
+    private static final int[] SEE_VALUES = { 100, 320, 330, 500, 900, 20000 };
+
+    /**
+     * Static exchange evaluation: the material the mover gains (in centipawns, negative for
+     * a loss) if both sides keep capturing on the move's target square, cheapest piece first,
+     * each free to stop when going on would lose. Worked out from the attack tables without
+     * making any move; sliders behind the pieces that capture join in as the line opens.
+     * A pawn taking on the last rank counts as a Queen from then on. Pins and checks are
+     * ignored, as usual for SEE. Castling is worth 0.
+     */
+    public int see(int move) {
+        if (Move.isCastle(move)) {
+            return 0;
+        }
+        int from = Move.from(move);
+        int to = Move.to(move);
+        int us = (mailbox[from] - 1) / 6;
+        int promotion = Move.promotion(move);
+
+        long occ = occupied & ~(1L << from);
+        int[] gain = seeGains;
+        if (Move.isEnPassant(move)) {
+            occ &= ~(1L << ((from & ~7) | (to & 7)));
+            gain[0] = SEE_VALUES[Piece.PAWN];
+        } else {
+            gain[0] = mailbox[to] != 0 ? SEE_VALUES[(mailbox[to] - 1) % 6] : 0;
+        }
+        // The piece now standing on the square, the next one to be taken
+        int onSquare = (mailbox[from] - 1) % 6;
+        if (promotion != 0) {
+            gain[0] += SEE_VALUES[promotion] - SEE_VALUES[Piece.PAWN];
+            onSquare = promotion;
+        }
+
+        long diagonal = pieces[Piece.BISHOP] | pieces[Piece.QUEEN] | pieces[6 + Piece.BISHOP] | pieces[6 + Piece.QUEEN];
+        long straight = pieces[Piece.ROOK] | pieces[Piece.QUEEN] | pieces[6 + Piece.ROOK] | pieces[6 + Piece.QUEEN];
+        long attackers = (attackersTo(to, 0, occ) | attackersTo(to, 1, occ)) & occ;
+        int side = us ^ 1;
+        boolean lastRank = to < 8 || to >= 56;
+        int depth = 0;
+        while (depth < gain.length - 1) {
+            long ours = attackers & occupancy[side];
+            if (ours == 0) {
+                break;
+            }
+            // Cheapest taker first
+            int type = Piece.PAWN;
+            long taker = ours & pieces[side * 6 + type];
+            while (taker == 0) {
+                type++;
+                taker = ours & pieces[side * 6 + type];
             }
+            if (type == Piece.KING && (attackers & occupancy[side ^ 1]) != 0) {
+                break; // The King can't take a defended piece
+            }
+            // What side makes if the exchange stops after this capture
+            depth++;
+            gain[depth] = SEE_VALUES[onSquare] - gain[depth - 1];
+            onSquare = type;
+            if (type == Piece.PAWN && lastRank) {
+                gain[depth] += SEE_VALUES[Piece.QUEEN] - SEE_VALUES[Piece.PAWN];
+                onSquare = Piece.QUEEN;
+            }
+            occ &= ~(taker & -taker);
+            attackers |= (Attacks.bishop(to, occ) & diagonal) | (Attacks.rook(to, occ) & straight);
+            attackers &= occ;
+            side ^= 1;
+        }
+        // From the last capture back, each side takes the better of capturing and stopping
+        for (; depth > 0; depth--) {
+            gain[depth - 1] = -Math.max(-gain[depth - 1], gain[depth]);
+        }
+        return gain[0];
+    }
+
+    /**
+     * Checks if the specified player's King is currently under attack.
+     */
+    public boolean isInCheck(Chess.Player player) {
+        long king = pieces[player.ordinal() * 6 + Piece.KING];
+        if (king == 0) {
+            return false; // No King on the board (only happens in hand-built test positions)
         }
 
-        return false; // No piece is attacking the King
+        Chess.Player opponent = (player == Chess.Player.white) ? Chess.Player.black : Chess.Player.white;
+        return isSquareAttacked(Long.numberOfTrailingZeros(king), opponent);
     }
     
     /**
@@ -104,59 +904,577 @@ public class Board {
      */
     public boolean isCheckmate(Chess.Player player) {
         // 1. If the player isn't in check, it can't be checkmate
-        // (If they are not in check but have no legal moves, it is Stalemate, 
-        // which your assignment says you are not required to implement).
         if (!isInCheck(player)) {
             return false;
         }
 
-        // 2. Iterate through every square to find the player's pieces
-        for (int startRow = 0; startRow < 8; startRow++) {
-            for (int startCol = 0; startCol < 8; startCol++) {
-                Piece currentPiece = grid[startRow][startCol];
-                
-                if (currentPiece != null && currentPiece.getPlayer() == player) {
-                    
-                    // 3. For this piece, try moving it to every possible square on the board
-                    for (int endRow = 0; endRow < 8; endRow++) {
-                        for (int endCol = 0; endCol < 8; endCol++) {
-                            
-                            // If the piece is physically allowed to make this move...
-                            if (currentPiece.isValidMove(startRow, startCol, endRow, endCol, grid)) {
-                                
-                            	// --- SIMULATE THE MOVE ---
-                                Piece capturedPiece = grid[endRow][endCol];
-                                
-                                boolean isEnPassant = (currentPiece instanceof Pawn && startCol != endCol && capturedPiece == null);
-                                Piece epCapturedPawn = null;
-                                if (isEnPassant) {
-                                    epCapturedPawn = grid[startRow][endCol];
-                                    grid[startRow][endCol] = null;
-                                }
-
-                                grid[endRow][endCol] = currentPiece;
-                                grid[startRow][startCol] = null;
-
-                                boolean stillInCheck = isInCheck(player);
-
-                                // --- UNDO THE MOVE ---
-                                grid[startRow][startCol] = currentPiece;
-                                grid[endRow][endCol] = capturedPiece;
-                                
-                                if (isEnPassant) {
-                                    grid[startRow][endCol] = epCapturedPawn;
-                                }                            }
-                        }
-                    }
-                }
-            }
-        }
-
-        // 4. We tried every possible move for every single piece, and the King is still in check.
-        return true; 
+        // 2. In check with no legal move to get out of it
+        return !hasAnyLegalMove(player);
     }
-    
-    // Optional but helpful: Getter for the raw grid if Chess.java needs to iterate over it
+
+    /**
+     * Determines if the specified player is stalemated: not in check, but with no legal move.
+     */
+    public boolean isStalemate(Chess.Player player) {
+        return !isInCheck(player) && !hasAnyLegalMove(player);
+    }
+
+    /**
+     * Whether the player has at least one legal move. Stops at the first one it finds and
+     * tries the likeliest first: King steps (the only moves left in double check), then
+     * captures of the checking piece, then blocks, or any other move when not in check.
+     * Nothing is generated into a list, so asking is much cheaper than generateLegalMoves.
+     */
+    public boolean hasAnyLegalMove(Chess.Player player) {
+        int us = player.ordinal();
+        long king = pieces[us * 6 + Piece.KING];
+        if (king == 0) {
+            return generatePseudoLegalMoves(player, scratchMoves) > 0; // Hand-built position
+        }
+        computeLegalityMasks(us);
+
+        // 1. King steps (castling needs a safe step to the next square anyway, so it never
+        // adds a way out)
+        if ((Attacks.KING[maskKingSq] & ~occupancy[us] & ~kingDanger) != 0) {
+            return true;
+        }
+        long targets = checkMask & ~occupancy[us];
+        if (targets == 0) {
+            return false; // Double check
+        }
+
+        // 2. Captures of the checker, en passant included
+        if (checkers != 0 && canMoveTo(us, checkers)) {
+            return true;
+        }
+        if (us == sideToMove.ordinal() && epSquare >= 0) {
+            long capturers = Attacks.PAWN[us ^ 1][epSquare] & pieces[us * 6 + Piece.PAWN];
+            while (capturers != 0) {
+                int from = Long.numberOfTrailingZeros(capturers);
+                capturers &= capturers - 1;
+                if (isLegal(us, Move.of(from, epSquare, Move.CAPTURE | Move.EN_PASSANT))) {
+                    return true;
+                }
+            }
+        }
+
+        // 3. Blocks, or any move at all when not in check
+        return canMoveTo(us, targets & ~checkers);
+    }
+
+    /**
+     * Whether a piece of ours other than the King can legally end a move (not en passant) on
+     * one of the targets, with the masks from computeLegalityMasks. The targets must already
+     * leave out our own pieces and any square that doesn't answer a check.
+     */
+    private boolean canMoveTo(int us, long targets) {
+        if (targets == 0) {
+            return false;
+        }
+        int base = us * 6;
+        int kingSq = maskKingSq;
+
+        long others = pieces[base + Piece.KNIGHT] | pieces[base + Piece.BISHOP]
+                | pieces[base + Piece.ROOK] | pieces[base + Piece.QUEEN];
+        while (others != 0) {
+            int from = Long.numberOfTrailingZeros(others);
+            others &= others - 1;
+            long reach;
+            switch (mailbox[from] - 1 - base) {
+                case Piece.KNIGHT: reach = Attacks.KNIGHT[from]; break;
+                case Piece.BISHOP: reach = Attacks.bishop(from, occupied); break;
+                case Piece.ROOK: reach = Attacks.rook(from, occupied); break;
+                default: reach = Attacks.queen(from, occupied); break;
+            }
+            if (canLand(from, reach & targets, kingSq)) {
+                return true;
+            }
+        }
+
+        long pawns = pieces[base + Piece.PAWN];
+        int forward = (us == 0) ? -8 : 8;
+        int startRow = (us == 0) ? 6 : 1;
+        long enemy = occupancy[us ^ 1];
+        while (pawns != 0) {
+            int from = Long.numberOfTrailingZeros(pawns);
+            pawns &= pawns - 1;
+            long reach = Attacks.PAWN[us][from] & enemy;
+            int to = from + forward;
+            if ((occupied & (1L << to)) == 0) {
+                reach |= 1L << to;
+                int doubleTo = to + forward;
+                if ((from >>> 3) == startRow && (occupied & (1L << doubleTo)) == 0) {
+                    reach |= 1L << doubleTo;
+                }
+            }
+            if (canLand(from, reach & targets, kingSq)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // A pinned piece may only use the squares on the line through itself and its King
+    private boolean canLand(int from, long reach, int kingSq) {
+        if ((pinned & (1L << from)) != 0) {
+            reach &= Attacks.LINE[kingSq][from];
+        }
+        return reach != 0;
+    }
+
+    /**
+     * Writes every legal move for the side to move into buffer (see Move for the encoding).
+     * The buffer needs room for Move.MAX_MOVES entries.
+     * @return the number of moves written
+     */
+    public int generateLegalMoves(int[] buffer) {
+        return generateLegalMoves(sideToMove, buffer);
+    }
+
+    public int generateLegalMoves(Chess.Player player, int[] buffer) {
+        int us = player.ordinal();
+        int count = generatePseudoLegalMoves(player, buffer);
+        // Worked out once for the position; after that each move is checked in constant time
+        computeLegalityMasks(us);
+        int legal = 0;
+        for (int i = 0; i < count; i++) {
+            if (isLegal(us, buffer[i])) {
+                buffer[legal++] = buffer[i];
+            }
+        }
+        return legal;
+    }
+
+    /**
+     * Checks whether a move (from the generator or encodeMove) is legal for the side to move,
+     * assuming the piece can make it at all: it must not leave the King in check, and a
+     * castling King may not start on, cross or land on an attacked square.
+     */
+    public boolean isLegalMove(int move) {
+        int us = sideToMove.ordinal();
+        computeLegalityMasks(us);
+        return isLegal(us, move);
+    }
+
+    /**
+     * Like isLegalMove, with the masks saved for this position by saveLegalityMasks.
+     */
+    boolean isLegalMove(int move, LegalityMasks masks) {
+        loadLegalityMasks(masks);
+        return isLegal(sideToMove.ordinal(), move);
+    }
+
+    /**
+     * The legality masks of one position, kept by a caller that checks that position's moves
+     * again after other positions have been searched in between (MovePicker does, between
+     * its stages), so they are computed once per node instead of once per check.
+     */
+    static final class LegalityMasks {
+        private int kingSq;
+        private long checkers;
+        private long checkMask;
+        private long pinned;
+        private long kingDanger;
+    }
+
+    /**
+     * Computes the legality masks for the side to move and copies them into masks, for the
+     * methods that take a LegalityMasks. They stay valid for this position only.
+     */
+    void saveLegalityMasks(LegalityMasks masks) {
+        computeLegalityMasks(sideToMove.ordinal());
+        masks.kingSq = maskKingSq;
+        masks.checkers = checkers;
+        masks.checkMask = checkMask;
+        masks.pinned = pinned;
+        masks.kingDanger = kingDanger;
+    }
+
+    private void loadLegalityMasks(LegalityMasks masks) {
+        maskKingSq = masks.kingSq;
+        checkers = masks.checkers;
+        checkMask = masks.checkMask;
+        pinned = masks.pinned;
+        kingDanger = masks.kingDanger;
+    }
+
+    /**
+     * Like generateLegalMoves, but moves that leave the mover's own King in check are kept.
+     * Castling is only generated when the King does not pass through an attacked square.
+     */
+    public int generatePseudoLegalMoves(int[] buffer) {
+        return generatePseudoLegalMoves(sideToMove, buffer);
+    }
+
+    public int generatePseudoLegalMoves(Chess.Player player, int[] buffer) {
+        return generatePseudoLegal(player.ordinal(), CAPTURES | QUIETS, buffer);
+    }
+
+    /**
+     * Writes the legal captures and promotions for the side to move into buffer (en passant
+     * and capturing promotions included, all four promotion pieces): the moves a quiescence
+     * search looks at. Cheaper than generateLegalMoves, since quiet moves are never made.
+     * @return the number of moves written
+     */
+    public int generateLegalCaptures(int[] buffer) {
+        return generateLegal(CAPTURES, buffer);
+    }
+
+    /**
+     * Writes the legal moves generateLegalCaptures leaves out (everything that neither
+     * captures nor promotes, castling included) into buffer. The two together are exactly
+     * generateLegalMoves, so a search can generate its quiet moves only when it gets to them.
+     * @return the number of moves written
+     */
+    public int generateLegalQuiets(int[] buffer) {
+        return generateLegal(QUIETS, buffer);
+    }
+
+    /**
+     * Checks whether a move that was not generated for this position (a killer move from
+     * another branch, a move from the transposition table) can be made here: the side to
+     * move has a piece on its start square that can reach its end square, and its flags are
+     * the ones the generator would give it. Castling also has to be allowed. Whether the
+     * move leaves the King in check is a separate question (see isLegalMove).
+     */
+    public boolean isPseudoLegalMove(int move) {
+        int us = sideToMove.ordinal();
+        int from = Move.from(move);
+        int to = Move.to(move);
+        long toBit = 1L << to;
+        if (move == 0 || mailbox[from] == 0 || (mailbox[from] - 1) / 6 != us || (occupancy[us] & toBit) != 0) {
+            return false;
+        }
+        if (Move.isCastle(move)) {
+            int n = generateCastling(us, from, scratchMoves, 0);
+            for (int i = 0; i < n; i++) {
+                if (scratchMoves[i] == move) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (move != encodeMove(from, to, Move.promotion(move))) {
+            return false; // Flags or promotion don't fit the board
+        }
+
+        int type = (mailbox[from] - 1) % 6;
+        switch (type) {
+            case Piece.PAWN:
+                if (Move.isEnPassant(move)) {
+                    return to == epSquare && (Attacks.PAWN[us][from] & toBit) != 0;
+                }
+                if (Move.isCapture(move)) {
+                    return (Attacks.PAWN[us][from] & toBit) != 0;
+                }
+                int forward = (us == 0) ? -8 : 8;
+                if ((occupied & (1L << (from + forward))) != 0) {
+                    return false;
+                }
+                if (Move.isDoublePush(move)) {
+                    return (from >>> 3) == (us == 0 ? 6 : 1) && to == from + 2 * forward && (occupied & toBit) == 0;
+                }
+                return to == from + forward;
+            case Piece.KNIGHT:
+                return (Attacks.KNIGHT[from] & toBit) != 0;
+            case Piece.BISHOP:
+                return (Attacks.bishop(from, occupied) & toBit) != 0;
+            case Piece.ROOK:
+                return (Attacks.rook(from, occupied) & toBit) != 0;
+            case Piece.QUEEN:
+                return (Attacks.queen(from, occupied) & toBit) != 0;
+            default:
+                return (Attacks.KING[from] & toBit) != 0;
+        }
+    }
+
+    // Kinds of moves for generatePseudoLegal: captures and promotions, and everything else
+    private static final int CAPTURES = 1;
+    private static final int QUIETS = 2;
+
+    /**
+     * Like generateLegalCaptures, with the masks saved for this position by saveLegalityMasks
+     * instead of computing them again.
+     */
+    int generateLegalCaptures(int[] buffer, LegalityMasks masks) {
+        loadLegalityMasks(masks);
+        return filterLegal(CAPTURES, buffer);
+    }
+
+    /**
+     * Like generateLegalQuiets, with the masks saved for this position by saveLegalityMasks.
+     */
+    int generateLegalQuiets(int[] buffer, LegalityMasks masks) {
+        loadLegalityMasks(masks);
+        return filterLegal(QUIETS, buffer);
+    }
+
+    private int generateLegal(int kinds, int[] buffer) {
+        computeLegalityMasks(sideToMove.ordinal());
+        return filterLegal(kinds, buffer);
+    }
+
+    // Generates the kinds of moves and keeps the legal ones; the masks must be current
+    private int filterLegal(int kinds, int[] buffer) {
+        int us = sideToMove.ordinal();
+        int count = generatePseudoLegal(us, kinds, buffer);
+        int legal = 0;
+        for (int i = 0; i < count; i++) {
+            if (isLegal(us, buffer[i])) {
+                buffer[legal++] = buffer[i];
+            }
+        }
+        return legal;
+    }
+
+    private int generatePseudoLegal(int us, int kinds, int[] buffer) {
+        int base = us * 6;
+        long enemy = occupancy[us ^ 1];
+        long targets = ((kinds & CAPTURES) != 0 ? enemy : 0) | ((kinds & QUIETS) != 0 ? ~occupied : 0);
+        int n = 0;
+
+        n = generatePawnMoves(us, enemy, kinds, buffer, n);
+
+        long knights = pieces[base + Piece.KNIGHT];
+        while (knights != 0) {
+            int from = Long.numberOfTrailingZeros(knights);
+            knights &= knights - 1;
+            n = addMoves(from, Attacks.KNIGHT[from] & targets, enemy, buffer, n);
+        }
+
+        long bishops = pieces[base + Piece.BISHOP] | pieces[base + Piece.QUEEN];
+        while (bishops != 0) {
+            int from = Long.numberOfTrailingZeros(bishops);
+            bishops &= bishops - 1;
+            n = addMoves(from, Attacks.bishop(from, occupied) & targets, enemy, buffer, n);
+        }
+
+        long rooks = pieces[base + Piece.ROOK] | pieces[base + Piece.QUEEN];
+        while (rooks != 0) {
+            int from = Long.numberOfTrailingZeros(rooks);
+            rooks &= rooks - 1;
+            n = addMoves(from, Attacks.rook(from, occupied) & targets, enemy, buffer, n);
+        }
+
+        long king = pieces[base + Piece.KING];
+        if (king != 0) {
+            int from = Long.numberOfTrailingZeros(king);
+            n = addMoves(from, Attacks.KING[from] & targets, enemy, buffer, n);
+            if ((kinds & QUIETS) != 0) {
+                n = generateCastling(us, from, buffer, n);
+            }
+        }
+        return n;
+    }
+
+    private int addMoves(int from, long targets, long enemy, int[] buffer, int n) {
+        while (targets != 0) {
+            int to = Long.numberOfTrailingZeros(targets);
+            targets &= targets - 1;
+            buffer[n++] = Move.of(from, to, (enemy & (1L << to)) != 0 ? Move.CAPTURE : 0);
+        }
+        return n;
+    }
+
+    private int generatePawnMoves(int us, long enemy, int kinds, int[] buffer, int n) {
+        long pawns = pieces[us * 6 + Piece.PAWN];
+        // White pawns move towards row 0 (square - 8), black pawns towards row 7 (square + 8)
+        int forward = (us == 0) ? -8 : 8;
+        int startRow = (us == 0) ? 6 : 1;
+        int lastRow = (us == 0) ? 0 : 7;
+        // En passant is only open to the side whose turn it is
+        int epTarget = (us == sideToMove.ordinal()) ? epSquare : -1;
+        boolean noisy = (kinds & CAPTURES) != 0;
+        boolean quiets = (kinds & QUIETS) != 0;
+
+        while (pawns != 0) {
+            int from = Long.numberOfTrailingZeros(pawns);
+            pawns &= pawns - 1;
+
+            // 1. Pushes (single, and double from the starting row); promotions go with captures
+            int to = from + forward;
+            if ((occupied & (1L << to)) == 0 && ((to >>> 3) == lastRow ? noisy : quiets)) {
+                n = addPawnMove(from, to, 0, lastRow, buffer, n);
+                int doubleTo = to + forward;
+                if (quiets && (from >>> 3) == startRow && (occupied & (1L << doubleTo)) == 0) {
+                    buffer[n++] = Move.of(from, doubleTo, Move.DOUBLE_PUSH);
+                }
+            }
+
+            // 2. Diagonal captures, including en passant
+            if (!noisy) {
+                continue;
+            }
+            long attacks = Attacks.PAWN[us][from];
+            long captures = attacks & enemy;
+            while (captures != 0) {
+                int target = Long.numberOfTrailingZeros(captures);
+                captures &= captures - 1;
+                n = addPawnMove(from, target, Move.CAPTURE, lastRow, buffer, n);
+            }
+            if (epTarget >= 0 && (attacks & (1L << epTarget)) != 0) {
+                buffer[n++] = Move.of(from, epTarget, Move.CAPTURE | Move.EN_PASSANT);
+            }
+        }
+        return n;
+    }
+
+    private int addPawnMove(int from, int to, int flags, int lastRow, int[] buffer, int n) {
+        if ((to >>> 3) == lastRow) {
+            buffer[n++] = Move.of(from, to, flags, Piece.QUEEN);
+            buffer[n++] = Move.of(from, to, flags, Piece.ROOK);
+            buffer[n++] = Move.of(from, to, flags, Piece.BISHOP);
+            buffer[n++] = Move.of(from, to, flags, Piece.KNIGHT);
+        } else {
+            buffer[n++] = Move.of(from, to, flags);
+        }
+        return n;
+    }
+
+    private int generateCastling(int us, int kingSq, int[] buffer, int n) {
+        int homeRow = (us == 0) ? 7 : 0;
+        int kingside = (us == 0) ? WHITE_KINGSIDE : BLACK_KINGSIDE;
+        int queenside = (us == 0) ? WHITE_QUEENSIDE : BLACK_QUEENSIDE;
+        if ((castlingRights & (kingside | queenside)) == 0 || kingSq != homeRow * 8 + 4) {
+            return n;
+        }
+
+        Chess.Player enemy = (us == 0) ? Chess.Player.black : Chess.Player.white;
+        if (isSquareAttacked(kingSq, enemy)) {
+            return n; // Can't castle out of check
+        }
+        long rooks = pieces[us * 6 + Piece.ROOK];
+
+        // Kingside: f and g must be empty, and the King may not cross an attacked square
+        if ((castlingRights & kingside) != 0 && (rooks & (1L << (kingSq + 3))) != 0
+                && (occupied & (0x60L << (homeRow * 8))) == 0
+                && !isSquareAttacked(kingSq + 1, enemy)) {
+            buffer[n++] = Move.of(kingSq, kingSq + 2, Move.CASTLE);
+        }
+
+        // Queenside: b, c and d must be empty, but only c and d need to be safe
+        if ((castlingRights & queenside) != 0 && (rooks & (1L << (kingSq - 4))) != 0
+                && (occupied & (0x0EL << (homeRow * 8))) == 0
+                && !isSquareAttacked(kingSq - 1, enemy)) {
+            buffer[n++] = Move.of(kingSq, kingSq - 2, Move.CASTLE);
+        }
+        return n;
+    }
+
+    /**
+     * Fills in the King square, checkers, check mask, pinned pieces and enemy attack map for
+     * the given side, so isLegal can answer for any of its moves without trying them.
+     */
+    private void computeLegalityMasks(int us) {
+        long king = pieces[us * 6 + Piece.KING];
+        if (king == 0) {
+            return; // Hand-built position without a King: isLegal lets everything through
+        }
+        int them = us ^ 1;
+        int kingSq = Long.numberOfTrailingZeros(king);
+        maskKingSq = kingSq;
+
+        checkers = attackersTo(kingSq, them, occupied);
+        if (checkers == 0) {
+            checkMask = -1L;
+        } else if ((checkers & (checkers - 1)) == 0) {
+            checkMask = checkers | Attacks.BETWEEN[kingSq][Long.numberOfTrailingZeros(checkers)];
+        } else {
+            checkMask = 0L; // Double check: only the King can move
+        }
+
+        // Pins: enemy sliders that would see our King if exactly one of our pieces moved away
+        long queens = pieces[them * 6 + Piece.QUEEN];
+        long snipers = (Attacks.rook(kingSq, 0L) & (pieces[them * 6 + Piece.ROOK] | queens))
+                     | (Attacks.bishop(kingSq, 0L) & (pieces[them * 6 + Piece.BISHOP] | queens));
+        pinned = 0L;
+        while (snipers != 0) {
+            int sniper = Long.numberOfTrailingZeros(snipers);
+            snipers &= snipers - 1;
+            long blockers = Attacks.BETWEEN[kingSq][sniper] & occupied;
+            if (blockers != 0 && (blockers & (blockers - 1)) == 0) {
+                pinned |= blockers & occupancy[us];
+            }
+        }
+
+        kingDanger = attackedBy(them, occupied & ~king);
+    }
+
+    /**
+     * Every square the given color attacks, with sliders blocked by occ.
+     */
+    private long attackedBy(int color, long occ) {
+        int base = color * 6;
+        long pawns = pieces[base + Piece.PAWN];
+        // Shift the pawns diagonally forward, dropping the ones that would wrap around a side
+        long notFileA = 0xFEFEFEFEFEFEFEFEL;
+        long notFileH = 0x7F7F7F7F7F7F7F7FL;
+        long attacks = color == 0
+                ? ((pawns & notFileA) >>> 9) | ((pawns & notFileH) >>> 7)
+                : ((pawns & notFileA) << 7) | ((pawns & notFileH) << 9);
+
+        long knights = pieces[base + Piece.KNIGHT];
+        while (knights != 0) {
+            attacks |= Attacks.KNIGHT[Long.numberOfTrailingZeros(knights)];
+            knights &= knights - 1;
+        }
+        long queens = pieces[base + Piece.QUEEN];
+        long diagonal = pieces[base + Piece.BISHOP] | queens;
+        while (diagonal != 0) {
+            attacks |= Attacks.bishop(Long.numberOfTrailingZeros(diagonal), occ);
+            diagonal &= diagonal - 1;
+        }
+        long straight = pieces[base + Piece.ROOK] | queens;
+        while (straight != 0) {
+            attacks |= Attacks.rook(Long.numberOfTrailingZeros(straight), occ);
+            straight &= straight - 1;
+        }
+        long king = pieces[base + Piece.KING];
+        if (king != 0) {
+            attacks |= Attacks.KING[Long.numberOfTrailingZeros(king)];
+        }
+        return attacks;
+    }
+
+    /**
+     * Checks that a pseudo-legal move does not leave the mover's King attacked, using the masks
+     * from computeLegalityMasks (which must have been run for the same side and position).
+     */
+    private boolean isLegal(int us, int move) {
+        if (pieces[us * 6 + Piece.KING] == 0) {
+            return true;
+        }
+        int kingSq = maskKingSq;
+        int from = Move.from(move);
+        int to = Move.to(move);
+        long toBit = 1L << to;
+
+        if (from == kingSq) {
+            if (Move.isCastle(move)) {
+                // Not out of, through or into check
+                long path = (1L << from) | Attacks.BETWEEN[from][to] | toBit;
+                return checkers == 0 && (kingDanger & path) == 0;
+            }
+            return (kingDanger & toBit) == 0;
+        }
+
+        if (Move.isEnPassant(move)) {
+            // Two pawns leave one row at once, which can uncover a slider along it; this is rare
+            // enough to simply build the occupancy after the move and look
+            long captured = 1L << ((from & ~7) | (to & 7));
+            long occ = (occupied & ~(1L << from) & ~captured) | toBit;
+            return (attackersTo(kingSq, us ^ 1, occ) & ~captured) == 0;
+        }
+
+        if ((checkMask & toBit) == 0) {
+            return false; // Leaves a check unanswered
+        }
+        // A pinned piece may only slide along the line through itself and its King
+        return (pinned & (1L << from)) == 0 || (Attacks.LINE[kingSq][from] & toBit) != 0;
+    }
+
+    // Optional but helpful: Getter for the raw grid if Chess.java needs to iterate over it.
+    // Treat it as read-only: writing to it directly would leave the bitboards out of date (use setPiece).
     public Piece[][] getGrid() {
         return grid;
     }
@@ -0,0 +1,289 @@
+package chess;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * External sort of (key, value) pairs of longs, for builders whose input is larger than
+ * the heap should hold.
+ *
+ * Pairs are collected in a fixed-size chunk; each full chunk is sorted in memory and
+ * written to a temporary file, and finish then merges the sorted chunks back as one stream.
+ * The heap needed is the chunk (16 bytes per pair) plus a small read buffer per chunk
+ * during the merge. Pairs come out ordered by key (unsigned) and then by value.
+ *
+ * Typical use:
+ *   try (EntrySorter sorter = new EntrySorter(chunkEntries, tempDirectory)) {
+ *       sorter.add(key, value); ...
+ *       sorter.finish();
+ *       while (sorter.next()) { ... sorter.key() ... sorter.value() ... }
+ *   }
+ */
+final class EntrySorter implements Closeable {
+
+    static final int ENTRY_BYTES = 16;
+
+    private static final int WRITE_BUFFER = 1 << 20;
+    private static final int MERGE_BUFFER = 1 << 16;
+
+    private final Path tempDirectory;
+    private long[] keys;
+    private long[] values;
+    private int size;
+    private long total;
+    private final List<Path> chunks = new ArrayList<>();
+
+    // The merge: a min-heap of chunk readers, and the pair last returned by next
+    private ChunkReader[] heap;
+    private int heapSize;
+    private long key;
+    private long value;
+
+    EntrySorter(int chunkEntries, Path tempDirectory) {
+        if (chunkEntries < 2) {
+            throw new IllegalArgumentException("Chunk too small: " + chunkEntries);
+        }
+        this.tempDirectory = tempDirectory;
+        keys = new long[chunkEntries];
+        values = new long[chunkEntries];
+    }
+
+    void add(long key, long value) throws IOException {
+        if (size == keys.length) {
+            spill();
+        }
+        keys[size] = key;
+        values[size++] = value;
+        total++;
+    }
+
+    /**
+     * Pairs added so far.
+     */
+    long size() {
+        return total;
+    }
+
+    /**
+     * Ends the input and starts the merge. The chunk arrays are released.
+     */
+    void finish() throws IOException {
+        if (size > 0) {
+            spill();
+        }
+        keys = null;
+        values = null;
+        heap = new ChunkReader[chunks.size()];
+        for (Path chunk : chunks) {
+            ChunkReader reader = new ChunkReader(chunk);
+            if (reader.next()) {
+                heap[heapSize++] = reader;
+                siftUp(heapSize - 1);
+            } else {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * Moves to the next pair in sorted order.
+     * @return false when every pair has been returned
+     */
+    boolean next() throws IOException {
+        if (heapSize == 0) {
+            return false;
+        }
+        ChunkReader top = heap[0];
+        key = top.key;
+        value = top.value;
+        if (!top.next()) {
+            top.close();
+            heap[0] = heap[--heapSize];
+            heap[heapSize] = null;
+        }
+        siftDown(0);
+        return true;
+    }
+
+    long key() {
+        return key;
+    }
+
+    long value() {
+        return value;
+    }
+
+    /**
+     * Closes the chunk files and deletes them.
+     */
+    @Override
+    public void close() throws IOException {
+        for (int i = 0; i < heapSize; i++) {
+            heap[i].close();
+        }
+        heapSize = 0;
+        for (Path chunk : chunks) {
+            Files.deleteIfExists(chunk);
+        }
+        chunks.clear();
+    }
+
+    /**
+     * Sorts the current chunk and writes it to a temporary file.
+     */
+    private void spill() throws IOException {
+        sort(keys, values, 0, size - 1);
+        Path chunk = Files.createTempFile(tempDirectory, "entries", ".chunk");
+        chunks.add(chunk);
+        try (FileChannel channel = FileChannel.open(chunk, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < size; i++) {
+                if (buffer.remaining() < ENTRY_BYTES) {
+                    drain(channel, buffer);
+                }
+                buffer.putLong(keys[i]).putLong(values[i]);
+            }
+            drain(channel, buffer);
+        }
+        size = 0;
+    }
+
+    static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    static int compare(long key1, long value1, long key2, long value2) {
+        int c = Long.compareUnsigned(key1, key2);
+        return c != 0 ? c : Long.compare(value1, value2);
+    }
+
+    // Quicksort on the two parallel arrays; the keys are hashes, so the middle pivot is fine
+    private static void sort(long[] keys, long[] values, int lo, int hi) {
+        while (hi - lo > 16) {
+            int mid = (lo + hi) >>> 1;
+            long pivotKey = keys[mid];
+            long pivotValue = values[mid];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (compare(keys[i], values[i], pivotKey, pivotValue) < 0) {
+                    i++;
+                }
+                while (compare(keys[j], values[j], pivotKey, pivotValue) > 0) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(keys, values, i++, j--);
+                }
+            }
+            // Recurse into the smaller half so the stack stays shallow
+            if (j - lo < hi - i) {
+                sort(keys, values, lo, j);
+                lo = i;
+            } else {
+                sort(keys, values, i, hi);
+                hi = j;
+            }
+        }
+        for (int i = lo + 1; i <= hi; i++) {
+            for (int j = i; j > lo && compare(keys[j - 1], values[j - 1], keys[j], values[j]) > 0; j--) {
+                swap(keys, values, j - 1, j);
+            }
+        }
+    }
+
+    private static void swap(long[] keys, long[] values, int i, int j) {
+        long k = keys[i];
+        keys[i] = keys[j];
+        keys[j] = k;
+        long v = values[i];
+        values[i] = values[j];
+        values[j] = v;
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heap[parent].compareTo(heap[i]) <= 0) {
+                return;
+            }
+            ChunkReader swap = heap[parent];
+            heap[parent] = heap[i];
+            heap[i] = swap;
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int smallest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < heapSize && heap[left].compareTo(heap[smallest]) < 0) {
+                smallest = left;
+            }
+            if (right < heapSize && heap[right].compareTo(heap[smallest]) < 0) {
+                smallest = right;
+            }
+            if (smallest == i) {
+                return;
+            }
+            ChunkReader swap = heap[smallest];
+            heap[smallest] = heap[i];
+            heap[i] = swap;
+            i = smallest;
+        }
+    }
+
+    /**
+     * Streams the pairs of one sorted chunk through a small buffer.
+     */
+    private static final class ChunkReader implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(MERGE_BUFFER).order(ByteOrder.LITTLE_ENDIAN);
+        long key;
+        long value;
+
+        ChunkReader(Path chunk) throws IOException {
+            channel = FileChannel.open(chunk, StandardOpenOption.READ);
+            buffer.limit(0);
+        }
+
+        boolean next() throws IOException {
+            if (buffer.remaining() < ENTRY_BYTES) {
+                buffer.compact();
+                while (buffer.position() < ENTRY_BYTES && channel.read(buffer) >= 0) {
+                    // Keep reading until a whole pair is in
+                }
+                buffer.flip();
+                if (buffer.remaining() < ENTRY_BYTES) {
+                    return false;
+                }
+            }
+            key = buffer.getLong();
+            value = buffer.getLong();
+            return true;
+        }
+
+        int compareTo(ChunkReader other) {
+            return compare(key, value, other.key, other.value);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
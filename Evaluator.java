@@ -0,0 +1,33 @@
+package chess;
+
+/**
+ * Static evaluation for the search: how good a position is for the side to move, in
+ * centipawns, without searching any further.
+ *
+ * Evaluators that keep state for one board between calls (see NnueEvaluator) are attached
+ * to the board a search runs on and detached afterwards, and give every search thread a
+ * copy of its own. Stateless evaluators can ignore all three.
+ */
+public interface Evaluator {
+
+    int evaluate(Board board);
+
+    /**
+     * Called before a search starts making moves on the board.
+     */
+    default void attach(Board board) {
+    }
+
+    /**
+     * Called when the search on the board is over.
+     */
+    default void detach(Board board) {
+    }
+
+    /**
+     * An evaluator another thread can use at the same time as this one.
+     */
+    default Evaluator copy() {
+        return this;
+    }
+}
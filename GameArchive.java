@@ -0,0 +1,252 @@
+package chess;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read-only access to a binary game archive written by GameArchiveWriter.
+ *
+ * File layout (all numbers little-endian):
+ *   file header   magic "CHGA", version (u16), reserved (u16), game count (u32),
+ *                 index offset (u64)                                           - 20 bytes
+ *   games         one after another, each:
+ *                   plies (u16), result (u8), flags (u8),
+ *                   [start FEN length (u16), FEN bytes]   if flags has HAS_FEN
+ *                   moves (u16 each)
+ *   index         byte offset of every game (u64 each), so any game can be read by id
+ *
+ * A move takes 16 bits: start square (bits 0-5), end square (bits 6-11) and promotion
+ * piece type (bits 12-14), with the squares numbered like the Board (row * 8 + col).
+ * The remaining flags (capture, castling, en passant, ...) follow from the position,
+ * so replay rebuilds them with Board.encodeMove and needs no move generation.
+ *
+ * The file is memory-mapped and read in place. Files over 1 GB are mapped in several
+ * overlapping windows, each running MAX_GAME_BYTES past the next one's start, so a game
+ * always lies entirely inside the window its offset falls in.
+ */
+public class GameArchive implements Closeable {
+
+    static final int MAGIC = 0x41474843; // "CHGA" read as a little-endian int
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 20;
+
+    // Per-game flags
+    static final int HAS_FEN = 1;
+
+    // Results
+    public static final int UNKNOWN = 0;
+    public static final int WHITE_WINS = 1;
+    public static final int BLACK_WINS = 2;
+    public static final int DRAW = 3;
+
+    // Largest possible game record: header, a FEN of up to 65535 bytes and 65535 moves
+    static final int MAX_GAME_BYTES = 4 + 2 + 65535 + 2 * 65535;
+
+    private static final int WINDOW_SHIFT = 30;
+    private static final long WINDOW_SIZE = 1L << WINDOW_SHIFT;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] windows;
+    private final int gameCount;
+    private final long indexOffset;
+
+    private GameArchive(FileChannel channel) throws IOException {
+        this.channel = channel;
+        long size = channel.size();
+        int count = (int) ((size + WINDOW_SIZE - 1) >>> WINDOW_SHIFT);
+        windows = new MappedByteBuffer[Math.max(count, 1)];
+        for (int i = 0; i < windows.length; i++) {
+            long start = (long) i << WINDOW_SHIFT;
+            long length = Math.min(size - start, WINDOW_SIZE + MAX_GAME_BYTES);
+            windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.max(length, 0));
+            windows[i].order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        MappedByteBuffer header = windows[0];
+        if (size < HEADER_BYTES || header.getInt(0) != MAGIC) {
+            throw new IOException("Not a game archive");
+        }
+        if (header.getShort(4) != VERSION) {
+            throw new IOException("Unsupported game archive version " + header.getShort(4));
+        }
+        gameCount = header.getInt(8);
+        indexOffset = header.getLong(12);
+        if (indexOffset == 0) {
+            throw new IOException("Game archive was not closed properly (no index)");
+        }
+    }
+
+    public static GameArchive open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new GameArchive(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Number of games; their ids run from 0 to size() - 1.
+     */
+    public int size() {
+        return gameCount;
+    }
+
+    /**
+     * Byte offset of a game's record in the file.
+     */
+    long offset(int game) {
+        if (game < 0 || game >= gameCount) {
+            throw new IndexOutOfBoundsException("No game " + game);
+        }
+        long at = indexOffset + 8L * game;
+        return windows[(int) (at >>> WINDOW_SHIFT)].getLong((int) (at & (WINDOW_SIZE - 1)));
+    }
+
+    public int getPlies(int game) {
+        long at = offset(game);
+        return window(at).getShort(position(at)) & 0xFFFF;
+    }
+
+    /**
+     * One of UNKNOWN, WHITE_WINS, BLACK_WINS or DRAW.
+     */
+    public int getResult(int game) {
+        long at = offset(game);
+        return window(at).get(position(at) + 2);
+    }
+
+    /**
+     * The FEN the game started from, or null for the normal starting position.
+     */
+    public String getStartFen(int game) {
+        long at = offset(game);
+        MappedByteBuffer window = window(at);
+        int pos = position(at);
+        if ((window.get(pos + 3) & HAS_FEN) == 0) {
+            return null;
+        }
+        byte[] fen = new byte[window.getShort(pos + 4) & 0xFFFF];
+        window.get(pos + 6, fen);
+        return new String(fen, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * The 16-bit encoded move at the given ply (see the class comment).
+     */
+    public int getMove(int game, int ply) {
+        long at = offset(game);
+        return window(at).getShort(movesStart(at) + 2 * ply) & 0xFFFF;
+    }
+
+    /**
+     * Sets the board to the game's starting position and plays its first plies moves
+     * (all of them if plies is larger than the game).
+     * @return the number of moves played
+     */
+    public int replay(int game, Board board, int plies) {
+        long at = offset(game);
+        MappedByteBuffer window = window(at);
+        int pos = position(at);
+        int count = Math.min(plies, window.getShort(pos) & 0xFFFF);
+
+        if ((window.get(pos + 3) & HAS_FEN) != 0) {
+            int length = window.getShort(pos + 4) & 0xFFFF;
+            board.setFen(new BufferView(window, pos + 6, length));
+        } else {
+            board.setFen(Board.START_FEN);
+        }
+
+        int moves = movesStart(at);
+        for (int i = 0; i < count; i++) {
+            board.makeMove(toMove(board, window.getShort(moves + 2 * i) & 0xFFFF));
+        }
+        return count;
+    }
+
+    public int replay(int game, Board board) {
+        return replay(game, board, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Packs a move into its 16-bit archive form.
+     */
+    public static int encode(int move) {
+        return Move.from(move) | (Move.to(move) << 6) | (Move.promotion(move) << 12);
+    }
+
+    /**
+     * Turns a 16-bit archive move back into a full packed move for the board's position.
+     */
+    public static int toMove(Board board, int encoded) {
+        return board.encodeMove(encoded & 63, (encoded >>> 6) & 63, (encoded >>> 12) & 7);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private MappedByteBuffer window(long at) {
+        return windows[(int) (at >>> WINDOW_SHIFT)];
+    }
+
+    private static int position(long at) {
+        return (int) (at & (WINDOW_SIZE - 1));
+    }
+
+    private int movesStart(long at) {
+        MappedByteBuffer window = window(at);
+        int pos = position(at);
+        if ((window.get(pos + 3) & HAS_FEN) != 0) {
+            return pos + 6 + (window.getShort(pos + 4) & 0xFFFF);
+        }
+        return pos + 4;
+    }
+
+    /**
+     * The start FEN read straight out of the mapped file.
+     */
+    private static final class BufferView implements CharSequence {
+        private final MappedByteBuffer buffer;
+        private final int start;
+        private final int length;
+
+        BufferView(MappedByteBuffer buffer, int start, int length) {
+            this.buffer = buffer;
+            this.start = start;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (buffer.get(start + index) & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            StringBuilder sb = new StringBuilder(to - from);
+            for (int i = from; i < to; i++) {
+                sb.append(charAt(i));
+            }
+            return sb.toString();
+        }
+
+        @Override
+        public String toString() {
+            return subSequence(0, length).toString();
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package chess;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Writes games into the binary archive format read by GameArchive.
+ *
+ * Games are appended in the order given and numbered from 0. The offset index and the game
+ * count are written by close, so an archive that was never closed is rejected on open.
+ *
+ * Typical use:
+ *   try (GameArchiveWriter writer = GameArchiveWriter.create(path)) {
+ *       writer.add(session, GameArchive.WHITE_WINS);
+ *   }
+ */
+public class GameArchiveWriter implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private long position;
+    private long[] offsets = new long[1024];
+    private int gameCount;
+
+    private GameArchiveWriter(FileChannel channel) throws IOException {
+        this.channel = channel;
+        buffer = ByteBuffer.allocateDirect(Math.max(BUFFER_SIZE, GameArchive.MAX_GAME_BYTES))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        // The header is rewritten with the real count and index offset on close
+        buffer.putInt(GameArchive.MAGIC)
+                .putShort((short) GameArchive.VERSION)
+                .putShort((short) 0)
+                .putInt(0)
+                .putLong(0);
+        position = GameArchive.HEADER_BYTES;
+    }
+
+    /**
+     * Creates (or truncates) the archive file at path.
+     */
+    public static GameArchiveWriter create(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        return new GameArchiveWriter(channel);
+    }
+
+    /**
+     * Adds the moves played so far in a session, which always starts from the normal position.
+     * @param result one of GameArchive.UNKNOWN, WHITE_WINS, BLACK_WINS or DRAW
+     * @return the new game's id
+     */
+    public int add(GameSession session, int result) throws IOException {
+        return add(session.getHistory(), session.getMoveCount(), null, result);
+    }
+
+    /**
+     * Adds a game.
+     * @param moves packed moves (see Move), as played from the start position
+     * @param startFen the position the game started from, or null for the normal one
+     * @param result one of GameArchive.UNKNOWN, WHITE_WINS, BLACK_WINS or DRAW
+     * @return the new game's id
+     */
+    public int add(int[] moves, int plies, String startFen, int result) throws IOException {
+        if (plies > 0xFFFF) {
+            throw new IllegalArgumentException("Game too long for the archive: " + plies + " plies");
+        }
+        if (result < GameArchive.UNKNOWN || result > GameArchive.DRAW) {
+            throw new IllegalArgumentException("Bad result " + result);
+        }
+        byte[] fen = startFen == null ? null : startFen.getBytes(StandardCharsets.ISO_8859_1);
+        if (fen != null && fen.length > 0xFFFF) {
+            throw new IllegalArgumentException("Start FEN too long");
+        }
+
+        int size = 4 + (fen == null ? 0 : 2 + fen.length) + 2 * plies;
+        if (buffer.remaining() < size) {
+            flush();
+        }
+
+        if (gameCount == offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        offsets[gameCount] = position;
+
+        buffer.putShort((short) plies)
+                .put((byte) result)
+                .put((byte) (fen == null ? 0 : GameArchive.HAS_FEN));
+        if (fen != null) {
+            buffer.putShort((short) fen.length).put(fen);
+        }
+        for (int i = 0; i < plies; i++) {
+            buffer.putShort((short) GameArchive.encode(moves[i]));
+        }
+        position += size;
+        return gameCount++;
+    }
+
+    /**
+     * Games added so far.
+     */
+    public int size() {
+        return gameCount;
+    }
+
+    /**
+     * Writes the offset index and the final header, then closes the file.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            long indexOffset = position;
+            for (int i = 0; i < gameCount; i++) {
+                if (buffer.remaining() < 8) {
+                    flush();
+                }
+                buffer.putLong(offsets[i]);
+            }
+            flush();
+
+            ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(gameCount).putLong(indexOffset).flip();
+            while (header.hasRemaining()) {
+                channel.write(header, 8 + header.position());
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Converts a PGN file into an archive: java chess.GameArchiveWriter games.pgn games.bin [threads]
+     * Games that fail validation are left out.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: java chess.GameArchiveWriter <file.pgn> <archive> [threads]");
+            System.exit(2);
+        }
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        Path pgn = Paths.get(args[0]);
+        Path out = Paths.get(args[1]);
+        try (PgnReader reader = PgnReader.open(pgn);
+             GameArchiveWriter writer = GameArchiveWriter.create(out)) {
+            PgnValidator.Summary summary = new PgnValidator(pool).validate(reader, game -> {
+                if (!game.passed) {
+                    return;
+                }
+                try {
+                    writer.add(game.moves, game.plies, game.startFen, game.result);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            System.out.printf("%d games written, %d skipped, in %d ms%n",
+                    summary.passed, summary.failed(), summary.millis);
+        } finally {
+            pool.shutdown();
+        }
+        System.out.printf("%s: %d bytes -> %s: %d bytes%n",
+                pgn, Files.size(pgn), out, Files.size(out));
+    }
+}
@@ -0,0 +1,228 @@
+package chess;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * One game of chess: its board, whose turn it is and the moves played so far.
+ *
+ * Sessions are independent of each other, so any number of games can run in one JVM
+ * (see SessionRegistry). A single session is not thread-safe; calls to play must not overlap.
+ * Chess.play and Chess.start drive a default session for code that only needs one game.
+ */
+public class GameSession {
+
+    private final Board board;
+    private Chess.Player currentPlayer;
+
+    // Packed moves (see Move) in the order they were played
+    private int[] history = new int[128];
+    private int historyLength;
+
+    // Last time a move was submitted, for evicting abandoned games
+    private volatile long lastActive;
+
+    // Answers checkmate questions for endings it holds, or null
+    private Tablebase tablebase;
+
+    public GameSession() {
+        board = new Board(); // Creates a fresh board with starting pieces
+        currentPlayer = Chess.Player.white; // White always goes first
+        lastActive = System.currentTimeMillis();
+    }
+
+    public Board getBoard() {
+        return board;
+    }
+
+    public Chess.Player getCurrentPlayer() {
+        return currentPlayer;
+    }
+
+    /**
+     * The moves played so far, oldest first.
+     */
+    public int[] getHistory() {
+        return Arrays.copyOf(history, historyLength);
+    }
+
+    public int getMoveCount() {
+        return historyLength;
+    }
+
+    public long getLastActive() {
+        return lastActive;
+    }
+
+    /**
+     * Lets checkmate detection look positions up in a tablebase (null for none).
+     */
+    public void setTablebase(Tablebase tablebase) {
+        this.tablebase = tablebase;
+    }
+
+    void touch() {
+        lastActive = System.currentTimeMillis();
+    }
+
+    private void recordMove(int move) {
+        if (historyLength == history.length) {
+            history = Arrays.copyOf(history, history.length * 2);
+        }
+        history[historyLength++] = move;
+    }
+
+    /**
+     * Plays the next move for whichever player has the turn.
+     */
+    public ReturnPlay play(CharSequence move) {
+        return play(MoveParser.parse(move));
+    }
+
+    /**
+     * Plays a move already read by MoveParser.parse (error codes and RESIGN included),
+     * for callers that parse their input themselves.
+     */
+    public ReturnPlay play(int parsedMove) {
+        ReturnPlay result = new ReturnPlay();
+
+        // 1. Handle Resignation immediately
+        if (parsedMove == MoveParser.RESIGN) {
+            result.message = currentPlayer == Chess.Player.white ? 
+                             ReturnPlay.Message.RESIGN_BLACK_WINS : 
+                             ReturnPlay.Message.RESIGN_WHITE_WINS;
+            result.piecesOnBoard = getBoardState();
+            return result; // Game over
+        }
+
+        // 2. Anything the parser rejected (missing or off-board squares, stray tokens)
+        if (MoveParser.isError(parsedMove)) {
+            return illegalMoveResult();
+        }
+
+        int from = Move.from(parsedMove);
+        int to = Move.to(parsedMove);
+        int startRow = from >>> 3, startCol = from & 7;
+        int endRow = to >>> 3, endCol = to & 7;
+        boolean drawRequested = MoveParser.isDrawOffer(parsedMove);
+
+        Piece pieceToMove = board.getPiece(startRow, startCol);
+
+        // 3. Validation Check: Is there a piece? Does it belong to the current player?
+        if (pieceToMove == null || pieceToMove.getPlayer() != currentPlayer) {
+            return illegalMoveResult();
+        }
+
+        // 4. Rules Check: Can this specific piece physically make this move?
+        if (!pieceToMove.isValidMove(startRow, startCol, endRow, endCol, board)) {
+            return illegalMoveResult();
+        }
+
+        // 5. Execute the move. The Board takes care of the castling Rook, en passant captures,
+        // promotion, castling rights and the en passant square, and remembers how to undo all of it.
+        // A promotion type of 0 (none given) lets the Board default to a Queen.
+        int packedMove = board.encodeMove(from, to, Move.promotion(parsedMove));
+
+        // Would this move leave the CURRENT player in check? The Board decides from its
+        // checkers and pins, without trying the move first.
+        if (!board.isLegalMove(packedMove)) {
+            return illegalMoveResult();
+        }
+        board.makeMove(packedMove);
+
+        // --- NEW: CHECK, CHECKMATE AND STALEMATE DETECTION ---
+        Chess.Player opponent = (currentPlayer == Chess.Player.white) ? Chess.Player.black : Chess.Player.white;
+        
+        boolean over = false;
+        if (board.isInCheck(opponent)) {
+            if (isCheckmate(opponent)) {
+                over = true;
+                // Return the specific win message based on who just played
+                result.message = (currentPlayer == Chess.Player.white) ? 
+                                 ReturnPlay.Message.CHECKMATE_WHITE_WINS : 
+                                 ReturnPlay.Message.CHECKMATE_BLACK_WINS;
+            } else {
+                result.message = ReturnPlay.Message.CHECK;
+            }
+        } else if (!board.hasAnyLegalMove(opponent)) {
+            // Not in check and nothing to play: a draw
+            over = true;
+            result.message = ReturnPlay.Message.STALEMATE;
+        }
+
+        // 6. Handle Draw requests, and the draws the rules declare on their own: the same
+        // position for the third time, or fifty moves each without a capture or pawn move
+        // (a move that mates still wins)
+        if (drawRequested || (!over && (board.isThreefoldRepetition() || board.isFiftyMoveDraw()))) {
+            result.message = ReturnPlay.Message.DRAW;
+        }
+
+        recordMove(packedMove);
+
+        // 7. Switch Turns (the Board already flipped its side to move in makeMove)
+        currentPlayer = (currentPlayer == Chess.Player.white) ? Chess.Player.black : Chess.Player.white;
+
+        // 8. Package the final board state and return
+        result.piecesOnBoard = getBoardState();
+        return result;
+    }
+
+    // The player is to move and in check: a tablebase knows mate (a loss in 0 plies)
+    // without generating moves, anything else asks the Board
+    private boolean isCheckmate(Chess.Player player) {
+        if (tablebase != null) {
+            int score = tablebase.probe(board);
+            if (score != Tablebase.NOT_FOUND) {
+                return score == -Search.MATE;
+            }
+        }
+        return board.isCheckmate(player);
+    }
+
+    /**
+     * Helper method to keep code clean when returning an illegal move.
+     * Notice that the turn DOES NOT change when an illegal move is made.
+     */
+    private ReturnPlay illegalMoveResult() {
+        ReturnPlay result = new ReturnPlay();
+        result.message = ReturnPlay.Message.ILLEGAL_MOVE;
+        result.piecesOnBoard = getBoardState(); // Returns the unchanged board
+        return result;
+    }    
+    
+    /**
+     * TRANSLATOR HELPER METHOD:
+     * Converts the board into the ArrayList of ReturnPiece objects required by the autograder.
+     * The ReturnPiece objects are shared, read-only instances (see ReturnPiece.of), so the only
+     * allocation is the list itself.
+     */
+    ArrayList<ReturnPiece> getBoardState() {
+        long occupied = board.getOccupied();
+        ArrayList<ReturnPiece> piecesOnBoard = new ArrayList<>(Long.bitCount(occupied));
+
+        // Walk only the occupied squares, in the same a8..h1 order as the grid
+        while (occupied != 0) {
+            int sq = Long.numberOfTrailingZeros(occupied);
+            occupied &= occupied - 1;
+            piecesOnBoard.add(ReturnPiece.of(board.getMailbox(sq) - 1, sq));
+        }
+        return piecesOnBoard;
+    }
+
+    /**
+     * Copies the board into a caller-owned byte[64] (see Board.copyMailbox), for clients that
+     * want the state without any allocation.
+     */
+    public void copyBoardState(byte[] dest) {
+        board.copyMailbox(dest);
+    }
+
+    /**
+     * Writes the squares changed by the last move into dest (room for 4) and returns how many.
+     * Together with the mailbox this lets a client update its copy of the board incrementally.
+     * Returns 0 before the first move.
+     */
+    public int getLastMoveChanges(int[] dest) {
+        return historyLength == 0 ? 0 : Move.changedSquares(history[historyLength - 1], dest);
+    }
+}
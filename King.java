@@ -2,40 +2,49 @@ package chess;
 
 public class King extends Piece {
 
-    public King(Chess.Player player) {
-        super(player, player == Chess.Player.white ? "wK" : "bK");
+    King(Chess.Player player) {
+        super(player, player == Chess.Player.white ? "wK" : "bK", KING);
     }
 
     @Override
-    public boolean isValidMove(int startRow, int startCol, int endRow, int endCol, Piece[][] board) {
-        int rowDiff = Math.abs(startRow - endRow);
-        int colDiff = Math.abs(startCol - endCol);
-
+    public boolean isValidMove(int startRow, int startCol, int endRow, int endCol, Board board) {
         // 1. Standard Move: One square in any direction
-        if (rowDiff <= 1 && colDiff <= 1) {
-            Piece destinationPiece = board[endRow][endCol];
+        if ((Attacks.KING[startRow * 8 + startCol] & (1L << (endRow * 8 + endCol))) != 0) {
+            Piece destinationPiece = board.getPiece(endRow, endCol);
             // Can move to an empty square or capture an opponent
             return destinationPiece == null || destinationPiece.getPlayer() != this.player;
         }
 
         // 2. Castling: King moves two squares left or right on the same row
-        if (rowDiff == 0 && colDiff == 2 && !this.hasMoved) {
+        if (startRow == endRow && Math.abs(startCol - endCol) == 2) {
             // Moving right (col 4 to 6) is Kingside. Moving left (col 4 to 2) is Queenside.
             boolean isKingside = endCol > startCol;
             int rookCol = isKingside ? 7 : 0;
-            
+
+            // The Board remembers whether this King and Rook have moved (its castling rights)
+            boolean white = this.player == Chess.Player.white;
+            int right = isKingside ? (white ? Board.WHITE_KINGSIDE : Board.BLACK_KINGSIDE)
+                                   : (white ? Board.WHITE_QUEENSIDE : Board.BLACK_QUEENSIDE);
+
             // Look at the corner square to find the Rook
-            Piece cornerPiece = board[startRow][rookCol];
-            
-            if (cornerPiece instanceof Rook && !cornerPiece.hasMoved()) {
+            Piece cornerPiece = board.getPiece(startRow, rookCol);
+
+            if ((board.getCastlingRights() & right) != 0 && cornerPiece instanceof Rook
+                    && cornerPiece.getPlayer() == this.player) {
                 // Verify every square between the King and the Rook is empty
+                int start = startRow * 8 + startCol;
+                if ((Attacks.BETWEEN[start][startRow * 8 + rookCol] & board.getOccupied()) != 0) {
+                    return false; // Path is blocked by a piece
+                }
+                // The King may not castle out of check, or cross or land on an attacked square
+                Chess.Player enemy = white ? Chess.Player.black : Chess.Player.white;
                 int step = isKingside ? 1 : -1;
-                for (int c = startCol + step; c != rookCol; c += step) {
-                    if (board[startRow][c] != null) {
-                        return false; // Path is blocked by a piece
+                for (int sq = start; sq != start + 3 * step; sq += step) {
+                    if (board.isSquareAttacked(sq, enemy)) {
+                        return false;
                     }
                 }
-                return true; // Path is clear, hasn't moved, Rook is ready!
+                return true; // Path is clear and safe, hasn't moved, Rook is ready!
             }
         }
 
@@ -0,0 +1,129 @@
+package chess;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Reads a channel line by line into one reusable byte buffer, for the text formats we ingest
+ * in bulk (FEN/EPD, PGN). All of them are ASCII, so each line is offered as a CharSequence
+ * view over the bytes instead of a new String. The view (and the buffer) are only valid
+ * until the next call to readLine.
+ */
+final class LineReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final ReadableByteChannel channel;
+    private byte[] bytes = new byte[BUFFER_SIZE];
+    // Unread data is bytes[position, limit)
+    private int position;
+    private int limit;
+    private boolean endOfInput;
+
+    private final AsciiView line = new AsciiView();
+    private int lineStart;
+    private int lineLength;
+    private long lineNumber;
+
+    LineReader(ReadableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Moves on to the next line of input (its line break, "\n" or "\r\n", is dropped).
+     * @return false when the input is used up
+     */
+    boolean readLine() throws IOException {
+        int scanFrom = position;
+        while (true) {
+            for (int i = scanFrom; i < limit; i++) {
+                if (bytes[i] == '\n') {
+                    setLine(position, i);
+                    position = i + 1;
+                    return true;
+                }
+            }
+            if (endOfInput) {
+                if (position == limit) {
+                    return false;
+                }
+                setLine(position, limit); // Last line without a line break
+                position = limit;
+                return true;
+            }
+            scanFrom = limit - position;
+            fill();
+        }
+    }
+
+    /**
+     * The current line.
+     */
+    AsciiView line() {
+        return line;
+    }
+
+    /**
+     * Points dest at part of the current line, from index start (inclusive) to end (exclusive).
+     */
+    AsciiView slice(AsciiView dest, int start, int end) {
+        return dest.set(bytes, lineStart + start, end - start);
+    }
+
+    /**
+     * Copies the current line's bytes into dest at offset and returns the offset after them.
+     * dest must have room for line().length() more bytes.
+     */
+    int copyLine(byte[] dest, int offset) {
+        System.arraycopy(bytes, lineStart, dest, offset, lineLength);
+        return offset + lineLength;
+    }
+
+    /**
+     * Number of the current line, starting at 1.
+     */
+    long lineNumber() {
+        return lineNumber;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void setLine(int start, int end) {
+        if (end > start && bytes[end - 1] == '\r') {
+            end--;
+        }
+        lineStart = start;
+        lineLength = end - start;
+        line.set(bytes, start, lineLength);
+        lineNumber++;
+    }
+
+    /**
+     * Moves the unread bytes to the front of the buffer and reads more after them,
+     * growing the buffer if a single line doesn't fit.
+     */
+    private void fill() throws IOException {
+        int unread = limit - position;
+        if (unread == bytes.length) {
+            bytes = Arrays.copyOf(bytes, bytes.length * 2);
+        } else if (position > 0) {
+            System.arraycopy(bytes, position, bytes, 0, unread);
+        }
+        position = 0;
+        limit = unread;
+
+        ByteBuffer target = ByteBuffer.wrap(bytes, limit, bytes.length - limit);
+        int read = channel.read(target);
+        if (read < 0) {
+            endOfInput = true;
+        } else {
+            limit += read;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package chess;
+
+/**
+ * Helpers for moves packed into a single int, as written by the Board's move generator.
+ *
+ * Layout (squares use the Board's row * 8 + col numbering):
+ *   bits  0-5   start square
+ *   bits  6-11  end square
+ *   bits 12-14  promotion piece type (Piece.KNIGHT .. Piece.QUEEN), 0 if not a promotion
+ *   bit  15     capture (includes en passant)
+ *   bit  16     en passant capture
+ *   bit  17     castling (the King's move; the Rook is implied)
+ *   bit  18     pawn double step
+ */
+public final class Move {
+
+    public static final int CAPTURE = 1 << 15;
+    public static final int EN_PASSANT = 1 << 16;
+    public static final int CASTLE = 1 << 17;
+    public static final int DOUBLE_PUSH = 1 << 18;
+
+    // Longest legal move list possible in any chess position is 218
+    public static final int MAX_MOVES = 256;
+
+    private Move() {
+    }
+
+    public static int of(int from, int to, int flags) {
+        return from | (to << 6) | flags;
+    }
+
+    public static int of(int from, int to, int flags, int promotion) {
+        return from | (to << 6) | (promotion << 12) | flags;
+    }
+
+    public static int from(int move) {
+        return move & 63;
+    }
+
+    public static int to(int move) {
+        return (move >>> 6) & 63;
+    }
+
+    public static int promotion(int move) {
+        return (move >>> 12) & 7;
+    }
+
+    public static boolean isCapture(int move) {
+        return (move & CAPTURE) != 0;
+    }
+
+    public static boolean isEnPassant(int move) {
+        return (move & EN_PASSANT) != 0;
+    }
+
+    public static boolean isCastle(int move) {
+        return (move & CASTLE) != 0;
+    }
+
+    public static boolean isDoublePush(int move) {
+        return (move & DOUBLE_PUSH) != 0;
+    }
+
+    /**
+     * Writes every square whose contents the move changes into dest (room for 4 needed):
+     * start and end, plus the captured pawn's square for en passant or the Rook's squares
+     * for castling.
+     * @return the number of squares written
+     */
+    public static int changedSquares(int move, int[] dest) {
+        int from = from(move);
+        int to = to(move);
+        dest[0] = from;
+        dest[1] = to;
+        if (isEnPassant(move)) {
+            dest[2] = (from & ~7) | (to & 7);
+            return 3;
+        }
+        if (isCastle(move)) {
+            boolean kingside = to > from;
+            dest[2] = kingside ? from + 3 : from - 4; // Rook start
+            dest[3] = kingside ? from + 1 : from - 1; // Rook end
+            return 4;
+        }
+        return 2;
+    }
+
+    /**
+     * Coordinate form of the move, e.g. "e2e4" or "e7e8q".
+     */
+    public static String toString(int move) {
+        StringBuilder sb = new StringBuilder(5);
+        appendSquare(sb, from(move));
+        appendSquare(sb, to(move));
+        int promotion = promotion(move);
+        if (promotion != 0) {
+            sb.append("pnbrqk".charAt(promotion));
+        }
+        return sb.toString();
+    }
+
+    private static void appendSquare(StringBuilder sb, int sq) {
+        sb.append((char) ('a' + (sq & 7)));
+        sb.append((char) ('8' - (sq >>> 3)));
+    }
+}
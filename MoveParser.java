@@ -0,0 +1,148 @@
+package chess;
+
+/**
+ * Reads move strings in a single pass, without regular expressions or intermediate strings.
+ *
+ * Accepted forms (tokens separated by any amount of whitespace):
+ *   "e2 e4", "e7 e8 N", "e2 e4 draw?", "e7 e8 Q draw?"   - the game's own format
+ *   "e2e4", "e7e8q"                                      - UCI coordinate form
+ *   "resign"
+ *
+ * A successful parse returns a non-negative int: the start square, end square and promotion
+ * piece in the same bits as Move (so Move.from, Move.to and Move.promotion read it), plus the
+ * DRAW_OFFER bit, or exactly RESIGN. A rejected string returns one of the negative error codes.
+ * The result is only the text's meaning; whether the move is legal is for the Board to decide.
+ */
+public final class MoveParser {
+
+    // Set when the move is followed by "draw?"
+    public static final int DRAW_OFFER = 1 << 24;
+    // The whole input was "resign"
+    public static final int RESIGN = 1 << 25;
+
+    // Error codes (always negative)
+    public static final int EMPTY = -1;             // nothing but whitespace
+    public static final int BAD_SQUARE = -2;        // a square is missing or not a1..h8
+    public static final int BAD_PROMOTION = -3;     // promotion letter is not one of Q, R, B, N
+    public static final int UNEXPECTED_TOKEN = -4;  // anything else after the squares
+
+    private MoveParser() {
+    }
+
+    public static boolean isError(int parsed) {
+        return parsed < 0;
+    }
+
+    public static boolean isDrawOffer(int parsed) {
+        return (parsed & DRAW_OFFER) != 0;
+    }
+
+    /**
+     * Parses a whole move string. See the class comment for the forms accepted.
+     */
+    public static int parse(CharSequence text) {
+        int length = text.length();
+        int i = skipSpace(text, 0, length);
+        if (i == length) {
+            return EMPTY;
+        }
+        if (matchesWord(text, i, length, "resign")) {
+            return skipSpace(text, i + 6, length) == length ? RESIGN : UNEXPECTED_TOKEN;
+        }
+
+        int from = square(text, i, length);
+        if (from < 0) {
+            return BAD_SQUARE;
+        }
+        i = skipSpace(text, i + 2, length);
+        int to = square(text, i, length);
+        if (to < 0) {
+            return BAD_SQUARE;
+        }
+        i += 2;
+
+        int promotion = 0;
+        boolean draw = false;
+        // UCI promotion: a lower case letter straight after the end square
+        if (i < length && !isSpace(text.charAt(i))) {
+            promotion = promotionType(text.charAt(i));
+            if (promotion == 0) {
+                return BAD_PROMOTION;
+            }
+            i++;
+            if (i < length && !isSpace(text.charAt(i))) {
+                return UNEXPECTED_TOKEN;
+            }
+        }
+
+        // Optional trailing tokens: a promotion letter and/or "draw?", each at most once
+        while ((i = skipSpace(text, i, length)) < length) {
+            if (!draw && matchesWord(text, i, length, "draw?")) {
+                draw = true;
+                i += 5;
+            } else if (promotion == 0 && (i + 1 == length || isSpace(text.charAt(i + 1)))) {
+                promotion = promotionType(text.charAt(i));
+                if (promotion == 0) {
+                    return BAD_PROMOTION;
+                }
+                i++;
+            } else {
+                return UNEXPECTED_TOKEN;
+            }
+        }
+
+        return Move.of(from, to, draw ? DRAW_OFFER : 0, promotion);
+    }
+
+    /**
+     * The square (row * 8 + col) named by the two characters at index i, or -1 if they
+     * aren't a file a-h followed by a rank 1-8.
+     */
+    public static int square(CharSequence text, int i, int length) {
+        if (i + 1 >= length) {
+            return -1;
+        }
+        int col = text.charAt(i) - 'a';
+        int rank = text.charAt(i + 1) - '1';
+        if ((col | rank) < 0 || col > 7 || rank > 7) {
+            return -1;
+        }
+        return (7 - rank) * 8 + col;
+    }
+
+    // Either case: "Q" in the game's format, "q" in UCI
+    private static int promotionType(char c) {
+        switch (c) {
+            case 'Q': case 'q': return Piece.QUEEN;
+            case 'R': case 'r': return Piece.ROOK;
+            case 'B': case 'b': return Piece.BISHOP;
+            case 'N': case 'n': return Piece.KNIGHT;
+            default: return 0;
+        }
+    }
+
+    // True if the token starting at i is exactly the given word
+    private static boolean matchesWord(CharSequence text, int i, int length, String word) {
+        int end = i + word.length();
+        if (end > length || (end < length && !isSpace(text.charAt(end)))) {
+            return false;
+        }
+        for (int k = 0; k < word.length(); k++) {
+            if (text.charAt(i + k) != word.charAt(k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int skipSpace(CharSequence text, int i, int length) {
+        while (i < length && isSpace(text.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+    }
+}
@@ -0,0 +1,244 @@
+package chess;
+
+/**
+ * Hands the moves of one position to the search a few at a time, likeliest cutoffs first,
+ * generating each group only when the one before it is used up:
+ *   1. hash moves: the previous iteration's PV move and the transposition table's move
+ *   2. good captures (and Queen promotions): those SEE says don't lose material, most
+ *      valuable victim first, then least valuable attacker
+ *   3. killers: the two quiet moves that last caused a cutoff at the same ply elsewhere
+ *   4. the other quiet moves, best history score first
+ *   5. bad captures (and underpromotions), put aside during stage 2
+ * Most cutoffs come from the first move or two, so a node that fails high early never
+ * generates its quiet moves, and the moves after a cutoff are never sorted: each call only
+ * picks the best one left in the current stage. No move is returned twice, and moves that
+ * weren't generated for this position (hash and killer moves) are checked first. The
+ * position's legality masks (see Board.LegalityMasks) are computed once, in init, and every
+ * check and generation at this node uses them, though other nodes are searched in between.
+ *
+ * Search keeps one picker per ply; the killer and history tables are that Search's own.
+ */
+final class MovePicker {
+
+    // Stages, as reported by stage() for the move last returned
+    static final int HASH = 0;
+    static final int GOOD_CAPTURES = 1;
+    static final int KILLERS = 2;
+    static final int QUIETS = 3;
+    static final int BAD_CAPTURES = 4;
+    static final int STAGES = 5;
+    static final String[] STAGE_NAMES = { "hash", "good captures", "killers", "quiets", "bad captures" };
+
+    // Steps of next(), in order; a stage can take more than one
+    private static final int PV_MOVE = 0;
+    private static final int TT_MOVE = 1;
+    private static final int GENERATE_CAPTURES = 2;
+    private static final int PICK_CAPTURES = 3;
+    private static final int KILLER_1 = 4;
+    private static final int KILLER_2 = 5;
+    private static final int GENERATE_QUIETS = 6;
+    private static final int PICK_QUIETS = 7;
+    private static final int PICK_BAD_CAPTURES = 8;
+    private static final int DONE = 9;
+
+    private final int[] captures = new int[Move.MAX_MOVES];
+    private final int[] captureScores = new int[Move.MAX_MOVES];
+    private final int[] quiets = new int[Move.MAX_MOVES];
+    private final int[] quietScores = new int[Move.MAX_MOVES];
+    private final Board.LegalityMasks masks = new Board.LegalityMasks();
+
+    private Board board;
+    private int pvMove;
+    private int ttMove;
+    private int killer1;
+    private int killer2;
+    private int[] history;
+    private int orderingSeed;
+
+    private int step;
+    private int stage;
+    private int captureCount;
+    private int captureIndex;
+    // Bad captures are moved to the front of captures as they are found
+    private int badCount;
+    private int badIndex;
+    private int quietCount;
+    private int quietIndex;
+
+    /**
+     * Starts on a new position. Any of the moves may be 0 (none). History is indexed by
+     * historyIndex; a non-zero orderingSeed adds a little noise to the quiet move order.
+     */
+    void init(Board board, int pvMove, int ttMove, int killer1, int killer2, int[] history, int orderingSeed) {
+        this.board = board;
+        this.pvMove = pvMove;
+        this.ttMove = ttMove != pvMove ? ttMove : 0;
+        this.killer1 = killer1;
+        this.killer2 = killer2 != killer1 ? killer2 : 0;
+        this.history = history;
+        this.orderingSeed = orderingSeed;
+        board.saveLegalityMasks(masks);
+        step = PV_MOVE;
+        captureCount = 0;
+        captureIndex = 0;
+        badCount = 0;
+        badIndex = 0;
+        quietCount = 0;
+        quietIndex = 0;
+    }
+
+    /**
+     * The stage of the move last returned by next.
+     */
+    int stage() {
+        return stage;
+    }
+
+    /**
+     * The next legal move to search, or 0 when there are none left.
+     */
+    int next() {
+        while (true) {
+            switch (step) {
+                case PV_MOVE:
+                    step = TT_MOVE;
+                    if (usable(pvMove)) {
+                        stage = HASH;
+                        return pvMove;
+                    }
+                    pvMove = 0;
+                    break;
+                case TT_MOVE:
+                    step = GENERATE_CAPTURES;
+                    if (usable(ttMove)) {
+                        stage = HASH;
+                        return ttMove;
+                    }
+                    ttMove = 0;
+                    break;
+                case GENERATE_CAPTURES:
+                    captureCount = board.generateLegalCaptures(captures, masks);
+                    for (int i = 0; i < captureCount; i++) {
+                        captureScores[i] = captureScore(captures[i]);
+                    }
+                    step = PICK_CAPTURES;
+                    break;
+                case PICK_CAPTURES:
+                    while (captureIndex < captureCount) {
+                        int move = pickBest(captures, captureScores, captureIndex++, captureCount);
+                        if (isHashMove(move)) {
+                            continue;
+                        }
+                        int promotion = Move.promotion(move);
+                        if ((promotion != 0 && promotion != Piece.QUEEN) || board.see(move) < 0) {
+                            captures[badCount++] = move;
+                            continue;
+                        }
+                        stage = GOOD_CAPTURES;
+                        return move;
+                    }
+                    step = KILLER_1;
+                    break;
+                case KILLER_1:
+                    step = KILLER_2;
+                    if (isKillerUsable(killer1)) {
+                        stage = KILLERS;
+                        return killer1;
+                    }
+                    killer1 = 0;
+                    break;
+                case KILLER_2:
+                    step = GENERATE_QUIETS;
+                    if (isKillerUsable(killer2)) {
+                        stage = KILLERS;
+                        return killer2;
+                    }
+                    killer2 = 0;
+                    break;
+                case GENERATE_QUIETS:
+                    quietCount = board.generateLegalQuiets(quiets, masks);
+                    int side = board.getSideToMove().ordinal();
+                    for (int i = 0; i < quietCount; i++) {
+                        int move = quiets[i];
+                        quietScores[i] = history[historyIndex(side, move)] + (((move * orderingSeed) >>> 26) & 31);
+                    }
+                    step = PICK_QUIETS;
+                    break;
+                case PICK_QUIETS:
+                    while (quietIndex < quietCount) {
+                        int move = pickBest(quiets, quietScores, quietIndex++, quietCount);
+                        if (isHashMove(move) || move == killer1 || move == killer2) {
+                            continue;
+                        }
+                        stage = QUIETS;
+                        return move;
+                    }
+                    step = PICK_BAD_CAPTURES;
+                    break;
+                case PICK_BAD_CAPTURES:
+                    if (badIndex < badCount) {
+                        stage = BAD_CAPTURES;
+                        return captures[badIndex++];
+                    }
+                    step = DONE;
+                    break;
+                default:
+                    return 0;
+            }
+        }
+    }
+
+    /**
+     * Index of a quiet move in a history table of 2 * 64 * 64 entries: side, start and end square.
+     */
+    static int historyIndex(int side, int move) {
+        return (side * 64 + Move.from(move)) * 64 + Move.to(move);
+    }
+
+    private boolean isHashMove(int move) {
+        return move == pvMove || move == ttMove;
+    }
+
+    private boolean usable(int move) {
+        return move != 0 && board.isPseudoLegalMove(move) && board.isLegalMove(move, masks);
+    }
+
+    // Killers are quiet moves; one that is now a capture or already came as a hash move is skipped
+    private boolean isKillerUsable(int move) {
+        return !isHashMove(move) && !Move.isCapture(move) && Move.promotion(move) == 0 && usable(move);
+    }
+
+    // Most valuable victim first, then least valuable attacker; promotions count the piece gained
+    private int captureScore(int move) {
+        int to = Move.to(move);
+        int gain = 0;
+        if (Move.isEnPassant(move)) {
+            gain = Search.PIECE_VALUES[Piece.PAWN];
+        } else if (Move.isCapture(move)) {
+            gain = Search.PIECE_VALUES[board.getPiece(to >>> 3, to & 7).getType()];
+        }
+        int promotion = Move.promotion(move);
+        if (promotion != 0) {
+            gain += Search.PIECE_VALUES[promotion] - Search.PIECE_VALUES[Piece.PAWN];
+        }
+        int from = Move.from(move);
+        return gain * 10 - board.getPiece(from >>> 3, from & 7).getType();
+    }
+
+    // Selection sort step: swaps the best move from i on into position i and returns it
+    private static int pickBest(int[] list, int[] scores, int i, int count) {
+        int best = i;
+        for (int j = i + 1; j < count; j++) {
+            if (scores[j] > scores[best]) {
+                best = j;
+            }
+        }
+        int move = list[best];
+        list[best] = list[i];
+        list[i] = move;
+        int score = scores[best];
+        scores[best] = scores[i];
+        scores[i] = score;
+        return move;
+    }
+}
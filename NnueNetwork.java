@@ -0,0 +1,157 @@
+package chess;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * The weights of a small quantized NNUE-style network: 768 inputs (one per piece kind and
+ * square) into a hidden layer, seen from both sides, then one output. Read-only once built,
+ * so one network serves every NnueEvaluator and thread.
+ *
+ * Inputs are counted from one side's point of view: "own" pieces are the first six kinds,
+ * and for Black the board is turned upside down, so the same weights serve both sides. The
+ * hidden layer (the accumulator) is the biases plus the weight rows of the pieces on the
+ * board, in 16-bit integers, which is what makes updating it per move cheap. The output is
+ *   (sum of clamp(own[j], 0, QA) * out[j] + clamp(other[j], 0, QA) * out[H + j] + bias) * SCALE / (QA * QB)
+ * centipawns for the side to move, with own = the side to move's accumulator.
+ *
+ * File layout (little-endian): magic "CHNN", version (u16), hidden size H (u16); then the
+ * feature weights (768 rows of H shorts, row = kind * 64 + square, kind = own Pawn..King then
+ * the other side's, square from that side's view with its back rank last), the H hidden
+ * biases (shorts), the 2H output weights (shorts) and the output bias (int).
+ */
+public final class NnueNetwork {
+
+    public static final int FEATURES = 768;
+    // Clamp of the hidden layer and scale of the output weights
+    public static final int QA = 255;
+    public static final int QB = 64;
+    public static final int SCALE = 400;
+
+    static final int MAGIC = 0x4E4E4843; // "CHNN" read as a little-endian int
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 8;
+
+    final int hidden;
+    final short[] featureWeights;
+    final short[] biases;
+    final short[] outputWeights;
+    final int outputBias;
+
+    public NnueNetwork(int hidden, short[] featureWeights, short[] biases, short[] outputWeights, int outputBias) {
+        if (hidden < 1 || featureWeights.length != FEATURES * hidden || biases.length != hidden
+                || outputWeights.length != 2 * hidden) {
+            throw new IllegalArgumentException("Weights don't match a hidden layer of " + hidden);
+        }
+        // The output sum is kept in an int; make sure no position can overflow it
+        long largest = Math.abs((long) outputBias);
+        for (short weight : outputWeights) {
+            largest += (long) QA * Math.abs(weight);
+        }
+        if (largest > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Output weights too large");
+        }
+        this.hidden = hidden;
+        this.featureWeights = featureWeights.clone();
+        this.biases = biases.clone();
+        this.outputWeights = outputWeights.clone();
+        this.outputBias = outputBias;
+    }
+
+    public int getHiddenSize() {
+        return hidden;
+    }
+
+    /**
+     * Input index of a piece (color * 6 + type) on a square, seen from one side (0 white, 1 black).
+     */
+    static int feature(int side, int piece, int sq) {
+        if (side == 0) {
+            return piece * 64 + sq;
+        }
+        return (piece < 6 ? piece + 6 : piece - 6) * 64 + (sq ^ 56);
+    }
+
+    /**
+     * The output for accumulators of the side to move and of the other side, in centipawns.
+     */
+    int output(short[] own, short[] other) {
+        int sum = outputBias;
+        int h = hidden;
+        for (int j = 0; j < h; j++) {
+            sum += Math.min(Math.max(own[j], 0), QA) * outputWeights[j];
+        }
+        for (int j = 0; j < h; j++) {
+            sum += Math.min(Math.max(other[j], 0), QA) * outputWeights[h + j];
+        }
+        return (int) ((long) sum * SCALE / (QA * QB));
+    }
+
+    /**
+     * A network with small random weights. It plays no better than chance, but evaluates at
+     * the same speed as a trained one of the same size: for benchmarks and for checking the
+     * incremental updates.
+     */
+    public static NnueNetwork random(int hidden, long seed) {
+        Random random = new Random(seed);
+        short[] featureWeights = new short[FEATURES * hidden];
+        for (int i = 0; i < featureWeights.length; i++) {
+            featureWeights[i] = (short) (random.nextInt(65) - 32);
+        }
+        short[] biases = new short[hidden];
+        for (int j = 0; j < hidden; j++) {
+            biases[j] = (short) random.nextInt(QA);
+        }
+        short[] outputWeights = new short[2 * hidden];
+        for (int j = 0; j < outputWeights.length; j++) {
+            outputWeights[j] = (short) (random.nextInt(2 * QB + 1) - QB);
+        }
+        return new NnueNetwork(hidden, featureWeights, biases, outputWeights, 0);
+    }
+
+    /**
+     * Reads a network file (see the class comment).
+     */
+    public static NnueNetwork load(Path file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC) {
+            throw new IOException(file + " is not a network file");
+        }
+        int version = buffer.getShort();
+        if (version != VERSION) {
+            throw new IOException(file + ": unsupported network version " + version);
+        }
+        int hidden = buffer.getShort() & 0xFFFF;
+        if (buffer.remaining() != (FEATURES + 3L) * hidden * 2 + 4) {
+            throw new IOException(file + ": wrong size for a hidden layer of " + hidden);
+        }
+        short[] featureWeights = new short[FEATURES * hidden];
+        short[] biases = new short[hidden];
+        short[] outputWeights = new short[2 * hidden];
+        buffer.asShortBuffer().get(featureWeights).get(biases).get(outputWeights);
+        buffer.position(buffer.position() + (FEATURES + 3) * hidden * 2);
+        int outputBias = buffer.getInt();
+        try {
+            return new NnueNetwork(hidden, featureWeights, biases, outputWeights, outputBias);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the network in the layout load reads.
+     */
+    public void save(Path file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + (FEATURES + 3) * hidden * 2 + 4)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putShort((short) VERSION).putShort((short) hidden);
+        buffer.asShortBuffer().put(featureWeights).put(biases).put(outputWeights);
+        buffer.position(buffer.position() + (FEATURES + 3) * hidden * 2);
+        buffer.putInt(outputBias);
+        Files.write(file, buffer.array());
+    }
+}
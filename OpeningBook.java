@@ -0,0 +1,210 @@
+package chess;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.function.ToLongFunction;
+
+/**
+ * Opening book lookups from a file in Polyglot's .bin layout.
+ *
+ * The file is a sorted array of 16-byte big-endian entries: position key (u64), move (u16),
+ * weight (u16) and a learning field (u32, unused here). A lookup binary searches the
+ * memory-mapped file for the position's key, so nothing but the entries read is touched.
+ *
+ * The key function decides which books match. By default it is PolyglotKeys.STANDARD, so
+ * books from other Polyglot tools and from OpeningBookBuilder both work; a book keyed some
+ * other way needs its own function, e.g. OpeningBook.open(path, PolyglotKeys.load(table)::key).
+ *
+ * Moves are stored the Polyglot way: to file (bits 0-2), to rank (3-5), from file (6-8),
+ * from rank (9-11) and promotion (12-14, 1 = Knight .. 4 = Queen), with castling written as
+ * the King taking its own Rook (e1h1, e1a1, e8h8, e8a8).
+ */
+public class OpeningBook implements Closeable {
+
+    static final int ENTRY_BYTES = 16;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer entries;
+    private final int entryCount;
+    private final ToLongFunction<Board> hash;
+
+    private OpeningBook(FileChannel channel, ToLongFunction<Board> hash) throws IOException {
+        this.channel = channel;
+        this.hash = hash;
+        long size = channel.size();
+        if (size % ENTRY_BYTES != 0) {
+            throw new IOException("Not an opening book (size is not a whole number of entries)");
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Opening book too large: " + size + " bytes");
+        }
+        entries = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        entries.order(ByteOrder.BIG_ENDIAN);
+        entryCount = (int) (size / ENTRY_BYTES);
+    }
+
+    /**
+     * Opens a book keyed with Polyglot's own table, as written by OpeningBookBuilder.
+     */
+    public static OpeningBook open(Path path) throws IOException {
+        return open(path, PolyglotKeys.STANDARD::key);
+    }
+
+    public static OpeningBook open(Path path, ToLongFunction<Board> hash) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new OpeningBook(channel, hash);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Number of entries (position and move pairs) in the book.
+     */
+    public int size() {
+        return entryCount;
+    }
+
+    /**
+     * Fills moves (packed, see Move) and weights with the book's legal moves for the board's
+     * position, in file order. Entries that aren't legal here, which can only come from a key
+     * collision or a broken book, are left out.
+     * @return how many were found (at most moves.length)
+     */
+    public int getMoves(Board board, int[] moves, int[] weights) {
+        long key = hash.applyAsLong(board);
+        int[] legal = null;
+        int legalCount = 0;
+        int count = 0;
+        for (int i = lowerBound(key); i < entryCount && count < moves.length; i++) {
+            int at = i * ENTRY_BYTES;
+            if (entries.getLong(at) != key) {
+                break;
+            }
+            if (legal == null) {
+                legal = new int[Move.MAX_MOVES];
+                legalCount = board.generateLegalMoves(legal);
+            }
+            int move = fromPolyglot(board, entries.getShort(at + 8) & 0xFFFF, legal, legalCount);
+            if (move != 0) {
+                moves[count] = move;
+                weights[count++] = entries.getShort(at + 10) & 0xFFFF;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Picks a book move for the board's position, each with a chance proportional to its weight.
+     * @return the packed move, or 0 if the position is not in the book
+     */
+    public int pick(Board board, Random random) {
+        int[] moves = new int[Move.MAX_MOVES];
+        int[] weights = new int[Move.MAX_MOVES];
+        int count = getMoves(board, moves, weights);
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            total += weights[i];
+        }
+        if (total == 0) {
+            // Every move weighted 0 (or none at all): take the first
+            return count > 0 ? moves[0] : 0;
+        }
+        long r = (long) (random.nextDouble() * total);
+        for (int i = 0; i < count; i++) {
+            r -= weights[i];
+            if (r < 0) {
+                return moves[i];
+            }
+        }
+        return moves[count - 1];
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // First entry whose key is >= key (keys compare unsigned)
+    private int lowerBound(long key) {
+        int lo = 0;
+        int hi = entryCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (Long.compareUnsigned(entries.getLong(mid * ENTRY_BYTES), key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * The Polyglot form of a packed move.
+     */
+    static int toPolyglot(int move) {
+        int from = Move.from(move);
+        int to = Move.to(move);
+        if (Move.isCastle(move)) {
+            to = (to & 7) == 6 ? to + 1 : to - 2; // The Rook's square
+        }
+        return (to & 7) | ((7 - (to >>> 3)) << 3) | ((from & 7) << 6) | ((7 - (from >>> 3)) << 9)
+                | (Move.promotion(move) << 12);
+    }
+
+    /**
+     * The legal move (from the list) that a Polyglot move stands for, or 0 if there is none.
+     */
+    static int fromPolyglot(Board board, int polyglot, int[] legal, int legalCount) {
+        int to = (7 - ((polyglot >>> 3) & 7)) * 8 + (polyglot & 7);
+        int from = (7 - ((polyglot >>> 9) & 7)) * 8 + ((polyglot >>> 6) & 7);
+        int promotion = (polyglot >>> 12) & 7;
+        int piece = board.getMailbox(from) - 1;
+        if (piece >= 0 && piece % 6 == Piece.KING && board.getMailbox(to) - 1 == piece - Piece.KING + Piece.ROOK) {
+            to = (to & 7) == 7 ? from + 2 : from - 2; // King takes own Rook: castling
+        }
+        for (int i = 0; i < legalCount; i++) {
+            int move = legal[i];
+            if (Move.from(move) == from && Move.to(move) == to && Move.promotion(move) == promotion) {
+                return move;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Lists the book moves for a position: java chess.OpeningBook book.bin "<FEN>" [key table]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: java chess.OpeningBook <book> <FEN> [key table]");
+            System.exit(2);
+        }
+        ToLongFunction<Board> hash = PolyglotKeys.STANDARD::key;
+        if (args.length > 2) {
+            hash = PolyglotKeys.load(Paths.get(args[2]))::key;
+        }
+        try (OpeningBook book = OpeningBook.open(Paths.get(args[0]), hash)) {
+            Board board = Board.fromFen(args[1]);
+            int[] moves = new int[Move.MAX_MOVES];
+            int[] weights = new int[Move.MAX_MOVES];
+            int count = book.getMoves(board, moves, weights);
+            if (count == 0) {
+                System.out.println("Not in book");
+            }
+            for (int i = 0; i < count; i++) {
+                System.out.printf("  %-6s %d%n", Move.toString(moves[i]), weights[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package chess;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.ToLongFunction;
+
+/**
+ * Writes an opening book (see OpeningBook) from the games in a GameArchive.
+ *
+ * The first maxPlies moves of every game are collected as (position key, move, score)
+ * entries, where the score is from the moving side's point of view: 2 for a win, 1 for a
+ * draw or an unknown result and 0 for a loss. The entries are sorted on disk by an
+ * EntrySorter, so the heap stays bounded, and each (position, move) pair that occurs in at
+ * least minGames games becomes one book entry weighted by its total score, as Polyglot's
+ * own book maker does. Weights are scaled down per position when they don't fit in 16 bits.
+ */
+public class OpeningBookBuilder {
+
+    public static final int DEFAULT_MAX_PLIES = 30;
+    public static final int DEFAULT_MIN_GAMES = 3;
+
+    private static final int WRITE_BUFFER = 1 << 20;
+
+    private final int maxPlies;
+    private final int minGames;
+    private final int chunkEntries;
+    private final Path tempDirectory;
+
+    // The moves of the position being written: Polyglot move, total score, games
+    private int[] moves = new int[Move.MAX_MOVES];
+    private long[] weights = new long[Move.MAX_MOVES];
+    private int[] games = new int[Move.MAX_MOVES];
+    private int moveCount;
+
+    public OpeningBookBuilder(int maxPlies, int minGames, int chunkEntries, Path tempDirectory) {
+        this.maxPlies = maxPlies;
+        this.minGames = minGames;
+        this.chunkEntries = chunkEntries;
+        this.tempDirectory = tempDirectory;
+    }
+
+    /**
+     * Builds a book keyed with Polyglot's own table, for OpeningBook.open(path) and other
+     * Polyglot tools.
+     * @return the number of entries written
+     */
+    public int build(GameArchive archive, Path out) throws IOException {
+        return build(archive, out, PolyglotKeys.STANDARD::key);
+    }
+
+    /**
+     * Builds a book keyed by the given function (e.g. PolyglotKeys.load(table)::key).
+     * @return the number of entries written
+     */
+    public int build(GameArchive archive, Path out, ToLongFunction<Board> hash) throws IOException {
+        try (EntrySorter sorter = new EntrySorter(chunkEntries, tempDirectory)) {
+            Board board = new Board();
+            for (int game = 0; game < archive.size(); game++) {
+                int plies = Math.min(maxPlies, archive.getPlies(game));
+                int result = archive.getResult(game);
+                archive.replay(game, board, 0);
+                for (int ply = 0; ply < plies; ply++) {
+                    int move = GameArchive.toMove(board, archive.getMove(game, ply));
+                    int score = score(result, board.getSideToMove());
+                    // Value: the move, then the score, so equal moves sort together
+                    sorter.add(hash.applyAsLong(board), ((long) OpeningBook.toPolyglot(move) << 2) | score);
+                    board.makeMove(move);
+                }
+            }
+            sorter.finish();
+            return write(sorter, out);
+        }
+    }
+
+    private static int score(int result, Chess.Player mover) {
+        switch (result) {
+            case GameArchive.WHITE_WINS: return mover == Chess.Player.white ? 2 : 0;
+            case GameArchive.BLACK_WINS: return mover == Chess.Player.black ? 2 : 0;
+            default: return 1;
+        }
+    }
+
+    private int write(EntrySorter sorter, Path out) throws IOException {
+        int entries = 0;
+        try (FileChannel channel = FileChannel.open(out, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER).order(ByteOrder.BIG_ENDIAN);
+            boolean any = sorter.next();
+            while (any) {
+                long key = sorter.key();
+                moveCount = 0;
+                // Gather this position's moves; equal moves are adjacent
+                do {
+                    int move = (int) (sorter.value() >>> 2);
+                    int score = (int) sorter.value() & 3;
+                    if (moveCount == 0 || moves[moveCount - 1] != move) {
+                        if (moveCount == moves.length) {
+                            moves = Arrays.copyOf(moves, moveCount * 2);
+                            weights = Arrays.copyOf(weights, moveCount * 2);
+                            games = Arrays.copyOf(games, moveCount * 2);
+                        }
+                        moves[moveCount] = move;
+                        weights[moveCount] = 0;
+                        games[moveCount++] = 0;
+                    }
+                    weights[moveCount - 1] += score;
+                    games[moveCount - 1]++;
+                    any = sorter.next();
+                } while (any && sorter.key() == key);
+                entries += writePosition(channel, buffer, key);
+            }
+            EntrySorter.drain(channel, buffer);
+        }
+        return entries;
+    }
+
+    // Writes the gathered moves of one position, heaviest first; returns how many were kept
+    private int writePosition(FileChannel channel, ByteBuffer buffer, long key) throws IOException {
+        int kept = 0;
+        long max = 0;
+        for (int i = 0; i < moveCount; i++) {
+            if (games[i] >= minGames && weights[i] > 0) {
+                moves[kept] = moves[i];
+                weights[kept++] = weights[i];
+                max = Math.max(max, weights[i]);
+            }
+        }
+        for (int i = 1; i < kept; i++) {
+            for (int j = i; j > 0 && weights[j] > weights[j - 1]; j--) {
+                long weight = weights[j];
+                weights[j] = weights[j - 1];
+                weights[j - 1] = weight;
+                int move = moves[j];
+                moves[j] = moves[j - 1];
+                moves[j - 1] = move;
+            }
+        }
+        for (int i = 0; i < kept; i++) {
+            long weight = max > 0xFFFF ? Math.max(1, weights[i] * 0xFFFF / max) : weights[i];
+            if (buffer.remaining() < OpeningBook.ENTRY_BYTES) {
+                EntrySorter.drain(channel, buffer);
+            }
+            buffer.putLong(key).putShort((short) moves[i]).putShort((short) weight).putInt(0);
+        }
+        return kept;
+    }
+
+    /**
+     * Builds a book: java chess.OpeningBookBuilder games.bin book.bin [max plies] [min games] [key table]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: java chess.OpeningBookBuilder <archive> <book> [max plies] [min games] [key table]");
+            System.exit(2);
+        }
+        Path out = Paths.get(args[1]).toAbsolutePath();
+        int maxPlies = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_MAX_PLIES;
+        int minGames = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_MIN_GAMES;
+        ToLongFunction<Board> hash = PolyglotKeys.STANDARD::key;
+        if (args.length > 4) {
+            hash = PolyglotKeys.load(Paths.get(args[4]))::key;
+        }
+        long start = System.currentTimeMillis();
+        try (GameArchive archive = GameArchive.open(Paths.get(args[0]))) {
+            OpeningBookBuilder builder = new OpeningBookBuilder(maxPlies, minGames,
+                    PositionIndexBuilder.DEFAULT_CHUNK_ENTRIES, out.getParent());
+            int entries = builder.build(archive, out, hash);
+            System.out.printf("%,d games, %,d book entries in %d ms%n",
+                    archive.size(), entries, System.currentTimeMillis() - start);
+        }
+    }
+}
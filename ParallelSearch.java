@@ -0,0 +1,212 @@
+package chess;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Lazy SMP: several threads search the same root position at once, sharing one
+ * transposition table. There is no work splitting; the threads help each other only through
+ * the table, and they search slightly different depths and move orders so they don't all
+ * repeat the same work. The main thread's answer is the one returned.
+ *
+ * Each thread gets its own copy of the Board and its own Search (with its own counters),
+ * so the only shared structure is the lock-free table.
+ */
+public class ParallelSearch {
+
+    private final TranspositionTable tt;
+    private final int threads;
+    private final Search[] searches;
+    private final ExecutorService helperPool;
+    // Runs the main thread's part of searches started with start, created when first needed
+    private ExecutorService mainPool;
+
+    public ParallelSearch(TranspositionTable tt, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Need at least one search thread");
+        }
+        this.tt = tt;
+        this.threads = threads;
+        searches = new Search[threads];
+        for (int i = 0; i < threads; i++) {
+            searches[i] = new Search(tt);
+        }
+        // The calling thread is the main search thread, so only the helpers need a pool
+        helperPool = threads > 1 ? Executors.newFixedThreadPool(threads - 1, r -> {
+            Thread t = new Thread(r, "search-helper");
+            t.setDaemon(true);
+            return t;
+        }) : null;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Sets the static evaluation (null for plain material): the first thread gets the evaluator
+     * itself, the others copies of it.
+     */
+    public void setEvaluator(Evaluator evaluator) {
+        for (int i = 0; i < threads; i++) {
+            searches[i].setEvaluator(evaluator == null || i == 0 ? evaluator : evaluator.copy());
+        }
+    }
+
+    /**
+     * Gives every thread the same tablebase (null for none); see Search.setTablebase.
+     */
+    public void setTablebase(Tablebase tablebase) {
+        for (Search search : searches) {
+            search.setTablebase(tablebase);
+        }
+    }
+
+    /**
+     * Searches the board's side to move with all threads. Same limits as Search.search;
+     * the board passed in is only read (each thread works on its own copy).
+     * Node, table and cutoff counters in the result are totals over all threads.
+     * @throws IllegalArgumentException if maxDepth is below 1
+     */
+    public Search.Result search(Board board, int maxDepth, long maxMillis) {
+        checkDepth(maxDepth);
+        prepare(maxMillis);
+        return run(board.copy(), maxDepth);
+    }
+
+    /**
+     * Like search, but runs in the background and returns at once, for callers that must keep
+     * reading input (a UCI engine has to answer "stop" at any time). stop and setTimeLimit
+     * act on the search from the moment this returns. One search at a time: wait for the
+     * future before starting the next.
+     * @throws IllegalArgumentException if maxDepth is below 1
+     */
+    public synchronized Future<Search.Result> start(Board board, int maxDepth, long maxMillis) {
+        checkDepth(maxDepth);
+        if (mainPool == null) {
+            mainPool = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "search-main");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        prepare(maxMillis);
+        Board root = board.copy();
+        return mainPool.submit(() -> run(root, maxDepth));
+    }
+
+    // Search.deepen has no result to give below depth 1
+    private static void checkDepth(int maxDepth) {
+        if (maxDepth < 1) {
+            throw new IllegalArgumentException("Search depth must be at least 1, got " + maxDepth);
+        }
+    }
+
+    private void prepare(long maxMillis) {
+        tt.newSearch();
+        for (Search search : searches) {
+            search.prepare(maxMillis);
+        }
+    }
+
+    // Searches a board of our own with all threads; the helpers get copies of it
+    private Search.Result run(Board board, int maxDepth) {
+        List<Future<Search.Result>> helpers = new ArrayList<>(threads - 1);
+        for (int i = 1; i < threads; i++) {
+            Search helper = searches[i];
+            Board helperBoard = board.copy();
+            int index = i;
+            helpers.add(helperPool.submit(() -> helper.iterate(helperBoard, maxDepth, index)));
+        }
+
+        Search.Result main = searches[0].iterate(board, maxDepth, 0);
+
+        // The main thread is done: stop the helpers and add up what everyone did
+        for (int i = 1; i < threads; i++) {
+            searches[i].stop();
+        }
+        long nodes = main.nodes;
+        long probes = main.ttProbes;
+        long hits = main.ttHits;
+        long[] cutoffsByMove = main.cutoffsByMove.clone();
+        long[] cutoffsByStage = main.cutoffsByStage.clone();
+        boolean interrupted = false;
+        for (int i = 1; i < threads; i++) {
+            // The helpers have been told to stop, so this wait is short: finish it even if
+            // interrupted, and pass the interrupt on afterwards
+            while (true) {
+                try {
+                    helpers.get(i - 1).get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Search helper thread failed", e.getCause());
+                }
+            }
+            nodes += searches[i].getNodes();
+            probes += searches[i].getTtProbes();
+            hits += searches[i].getTtHits();
+            addTo(cutoffsByMove, searches[i].getCutoffsByMove());
+            addTo(cutoffsByStage, searches[i].getCutoffsByStage());
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        return new Search.Result(main.bestMove, main.score, main.depth, main.pv,
+                nodes, main.millis, probes, hits, cutoffsByMove, cutoffsByStage);
+    }
+
+    private static void addTo(long[] total, long[] counts) {
+        for (int i = 0; i < total.length; i++) {
+            total[i] += counts[i];
+        }
+    }
+
+    /**
+     * Stops every thread of a running search (safe to call from another thread).
+     */
+    public void stop() {
+        for (Search search : searches) {
+            search.stop();
+        }
+    }
+
+    /**
+     * Gives a running search a new time limit, maxMillis from now (0 for none); see
+     * Search.setTimeLimit. Safe to call from another thread.
+     */
+    public void setTimeLimit(long maxMillis) {
+        for (Search search : searches) {
+            search.setTimeLimit(maxMillis);
+        }
+    }
+
+    /**
+     * Total nodes searched so far by all threads, read without locking.
+     */
+    public long getNodes() {
+        long nodes = 0;
+        for (Search search : searches) {
+            nodes += search.getNodes();
+        }
+        return nodes;
+    }
+
+    /**
+     * Shuts down the helper threads. The object can't be used afterwards.
+     */
+    public synchronized void shutdown() {
+        if (helperPool != null) {
+            helperPool.shutdownNow();
+        }
+        if (mainPool != null) {
+            mainPool.shutdownNow();
+        }
+    }
+}
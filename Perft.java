@@ -0,0 +1,126 @@
+package chess;
+
+/**
+ * Perft ("performance test") counts the leaf nodes of the legal move tree down to a fixed depth.
+ * The totals for the positions below are the published reference numbers, so any difference
+ * means move generation or move making has a bug. Running this class checks every position
+ * and prints nodes per second; the Maven build runs it during the test phase.
+ */
+public class Perft {
+
+    private static final int MAX_DEPTH = 16;
+
+    /**
+     * One reference position. expected[i] is the node count at depth i + 1.
+     */
+    static final class Case {
+        final String name;
+        final String fen;
+        final long[] expected;
+
+        Case(String name, String fen, long... expected) {
+            this.name = name;
+            this.fen = fen;
+            this.expected = expected;
+        }
+    }
+
+    static final Case[] CASES = {
+        new Case("start position", "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+                20, 400, 8902, 197281, 4865609),
+        new Case("kiwipete", "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+                48, 2039, 97862, 4085603),
+        new Case("position 3", "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+                14, 191, 2812, 43238, 674624),
+        new Case("position 4", "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+                6, 264, 9467, 422333),
+        new Case("position 5", "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+                44, 1486, 62379, 2103487),
+        new Case("position 6", "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+                46, 2079, 89890, 3894594),
+
+        // En passant and promotion edge cases
+        new Case("illegal en passant (pinned pawn)", "3k4/3p4/8/K1P4r/8/8/8/8 b - - 0 1",
+                18, 92, 1670, 10138, 185429, 1134888),
+        new Case("en passant capture gives check", "8/8/1k6/2b5/2pP4/8/5K2/8 b - d3 0 1",
+                15, 126, 1928, 13931, 206379, 1440467),
+        new Case("short castling gives check", "5k2/8/8/8/8/8/8/4K2R w K - 0 1",
+                15, 66, 1198, 6399, 120330, 661072),
+        new Case("long castling gives check", "3k4/8/8/8/8/8/8/R3K3 w Q - 0 1",
+                16, 71, 1286, 7418, 141077, 803711),
+        new Case("promote out of check", "2K2r2/4P3/8/8/8/8/8/3k4 w - - 0 1",
+                11, 133, 1442, 19174, 266199, 3821001),
+        new Case("underpromote to give check", "8/P1k5/K7/8/8/8/8/8 w - - 0 1",
+                6, 27, 273, 1329, 18135, 92683),
+        new Case("promote to give check", "4k3/1P6/8/8/8/8/K7/8 w - - 0 1",
+                9, 40, 472, 2661, 38983, 217342),
+        new Case("self stalemate", "K1k5/8/P7/8/8/8/8/8 w - - 0 1",
+                2, 6, 13, 63, 382, 2217),
+    };
+
+    private final Board board;
+    private final int[][] moves = new int[MAX_DEPTH][Move.MAX_MOVES];
+
+    public Perft(Board board) {
+        this.board = board;
+    }
+
+    /**
+     * Number of leaf nodes of the legal move tree, depth plies deep.
+     */
+    public long perft(int depth) {
+        return perft(0, depth);
+    }
+
+    private long perft(int ply, int depth) {
+        int[] list = moves[ply];
+        int count = board.generateLegalMoves(list);
+        if (depth == 1) {
+            return count; // Bulk counting: no need to make the last ply's moves
+        }
+
+        long nodes = 0;
+        for (int i = 0; i < count; i++) {
+            board.makeMove(list[i]);
+            nodes += perft(ply + 1, depth - 1);
+            board.unmakeMove();
+        }
+        return nodes;
+    }
+
+    /**
+     * Checks every reference position and prints the speed of each run.
+     * Pass a depth limit as the first argument to run a quicker subset.
+     */
+    public static void main(String[] args) {
+        int depthLimit = args.length > 0 ? Integer.parseInt(args[0]) : Integer.MAX_VALUE;
+        long totalNodes = 0;
+        long totalNanos = 0;
+        int failures = 0;
+
+        for (Case c : CASES) {
+            int depth = Math.min(depthLimit, c.expected.length);
+            Perft perft = new Perft(Board.fromFen(c.fen));
+
+            long start = System.nanoTime();
+            long nodes = perft.perft(depth);
+            long nanos = System.nanoTime() - start;
+
+            long expected = c.expected[depth - 1];
+            boolean ok = nodes == expected;
+            if (!ok) {
+                failures++;
+            }
+            totalNodes += nodes;
+            totalNanos += nanos;
+            System.out.printf("%-34s depth %d  %,12d nodes  %,12.0f nodes/sec  %s%n",
+                    c.name, depth, nodes, nodes * 1e9 / nanos, ok ? "ok" : "FAILED (expected " + expected + ")");
+        }
+
+        System.out.printf("total %,d nodes in %.2f s, %,.0f nodes/sec%n",
+                totalNodes, totalNanos / 1e9, totalNodes * 1e9 / totalNanos);
+        if (failures > 0) {
+            throw new IllegalStateException(failures + " perft position(s) gave the wrong node count");
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package chess;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * One game from a PGN file, as raw text: the tag pairs followed by the movetext.
+ * Produced by PgnReader; nothing is parsed until asked for, so splitting a file into games
+ * stays cheap and the real work can happen on other threads.
+ */
+public final class PgnGame {
+
+    private final long number;
+    private final long lineNumber;
+    final byte[] text;
+
+    PgnGame(long number, long lineNumber, byte[] text) {
+        this.number = number;
+        this.lineNumber = lineNumber;
+        this.text = text;
+    }
+
+    /**
+     * Position of the game in its file, starting at 1.
+     */
+    public long getNumber() {
+        return number;
+    }
+
+    /**
+     * Line of the file the game starts on.
+     */
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * The value of a tag pair such as [White "Morphy, Paul"], or null if the game has none.
+     */
+    public String getTag(String name) {
+        int i = 0;
+        while (i < text.length) {
+            // Tag pairs are lines starting with '['; the movetext follows them
+            while (i < text.length && (text[i] == ' ' || text[i] == '\t')) {
+                i++;
+            }
+            if (i < text.length && text[i] == '[') {
+                int nameStart = i + 1;
+                if (regionMatches(nameStart, name) && nameStart + name.length() < text.length
+                        && (text[nameStart + name.length()] == ' ' || text[nameStart + name.length()] == '"')) {
+                    int open = indexOf('"', nameStart + name.length());
+                    int close = open < 0 ? -1 : indexOf('"', open + 1);
+                    if (close >= 0) {
+                        return new String(text, open + 1, close - open - 1, StandardCharsets.ISO_8859_1);
+                    }
+                }
+            } else if (i < text.length && text[i] != '\n') {
+                break; // Reached the movetext
+            }
+            int newline = indexOf('\n', i);
+            i = newline < 0 ? text.length : newline + 1;
+        }
+        return null;
+    }
+
+    /**
+     * Index in text where the movetext begins (after the last tag pair line).
+     */
+    int movetextStart() {
+        int i = 0;
+        int movetext = 0;
+        while (i < text.length) {
+            int lineStart = i;
+            while (i < text.length && (text[i] == ' ' || text[i] == '\t')) {
+                i++;
+            }
+            if (i < text.length && text[i] != '[' && text[i] != '\n') {
+                return lineStart;
+            }
+            int newline = indexOf('\n', i);
+            i = newline < 0 ? text.length : newline + 1;
+            movetext = i;
+        }
+        return movetext;
+    }
+
+    @Override
+    public String toString() {
+        return new String(text, StandardCharsets.ISO_8859_1);
+    }
+
+    private boolean regionMatches(int offset, String s) {
+        if (offset + s.length() > text.length) {
+            return false;
+        }
+        for (int k = 0; k < s.length(); k++) {
+            if (text[offset + k] != s.charAt(k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int indexOf(char c, int from) {
+        for (int i = from; i < text.length; i++) {
+            if (text[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,122 @@
+package chess;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Splits a PGN file into games as it streams through, so files of any size can be read
+ * with memory for just one game at a time (plus the read buffer).
+ *
+ * A game is its tag pair lines followed by its movetext; a tag line that comes after some
+ * movetext starts the next game. Braces ({...} comments) are tracked across lines so a
+ * comment line starting with '[' doesn't split a game, and '%' escape lines are dropped.
+ */
+public class PgnReader implements Closeable {
+
+    private final LineReader reader;
+
+    // The game being collected, as raw bytes with '\n' line endings
+    private byte[] game = new byte[4096];
+    private int length;
+    private long gameLine;
+    private boolean inMovetext;
+    private int braceDepth;
+    private long games;
+
+    public PgnReader(ReadableByteChannel channel) {
+        reader = new LineReader(channel);
+    }
+
+    public static PgnReader open(Path path) throws IOException {
+        return new PgnReader(FileChannel.open(path, StandardOpenOption.READ));
+    }
+
+    /**
+     * The next game in the file, or null when there are no more.
+     */
+    public PgnGame next() throws IOException {
+        while (reader.readLine()) {
+            AsciiView line = reader.line();
+            int first = 0;
+            while (first < line.length() && (line.charAt(first) == ' ' || line.charAt(first) == '\t')) {
+                first++;
+            }
+            if (first == line.length()) {
+                if (length > 0) {
+                    append(); // Keep blank lines inside a game, but don't start one with them
+                }
+                continue;
+            }
+            char c = line.charAt(first);
+            if (c == '%' && first == 0) {
+                continue;
+            }
+
+            PgnGame finished = null;
+            if (c == '[' && braceDepth == 0) {
+                if (inMovetext) {
+                    finished = finish(); // This tag starts the next game
+                }
+            } else {
+                inMovetext = true;
+                trackBraces(line, first);
+            }
+            if (length == 0) {
+                gameLine = reader.lineNumber();
+            }
+            append();
+            if (finished != null) {
+                return finished;
+            }
+        }
+        return length > 0 ? finish() : null;
+    }
+
+    /**
+     * Games returned so far.
+     */
+    public long getGameCount() {
+        return games;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private void append() {
+        int needed = length + reader.line().length() + 1;
+        if (needed > game.length) {
+            game = Arrays.copyOf(game, Math.max(needed, game.length * 2));
+        }
+        length = reader.copyLine(game, length);
+        game[length++] = '\n';
+    }
+
+    private PgnGame finish() {
+        PgnGame result = new PgnGame(++games, gameLine, Arrays.copyOf(game, length));
+        length = 0;
+        inMovetext = false;
+        braceDepth = 0;
+        return result;
+    }
+
+    // Braces after a ';' comment don't count: that comment runs to the end of the line
+    private void trackBraces(CharSequence line, int from) {
+        for (int i = from; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '{') {
+                braceDepth++;
+            } else if (c == '}' && braceDepth > 0) {
+                braceDepth--;
+            } else if (c == ';' && braceDepth == 0) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package chess;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+/**
+ * Checks that every game in a PGN file is legal, spreading the games over a fork-join pool.
+ *
+ * The calling thread reads the file in batches of games while the pool validates the
+ * previous batch, so reading and checking overlap and memory stays bounded. Each worker
+ * replays its games on its own Board, resolving every SAN move against the legal move
+ * generator. Results are reported in file order.
+ */
+public class PgnValidator {
+
+    // Games read ahead per batch, and games per fork-join leaf (one Board each)
+    private static final int BATCH_SIZE = 4096;
+    private static final int LEAF_SIZE = 32;
+
+    /**
+     * Whether one game replayed cleanly.
+     */
+    public static final class GameResult {
+        public final long number;
+        public final long lineNumber;
+        public final boolean passed;
+        // Half-moves replayed (all of them if the game passed)
+        public final int plies;
+        // Why the game failed, or null
+        public final String error;
+        // The moves replayed (see Move), or null if the game failed
+        public final int[] moves;
+        // The game's FEN tag, or null if it starts from the normal position
+        public final String startFen;
+        // The Result tag as one of GameArchive.UNKNOWN, WHITE_WINS, BLACK_WINS or DRAW
+        public final int result;
+
+        GameResult(PgnGame game, int plies, String error) {
+            this(game, plies, error, null);
+        }
+
+        GameResult(PgnGame game, int plies, String error, int[] moves) {
+            this.number = game.getNumber();
+            this.lineNumber = game.getLineNumber();
+            this.passed = error == null;
+            this.plies = plies;
+            this.error = error;
+            this.moves = moves;
+            this.startFen = game.getTag("FEN");
+            this.result = resultCode(game.getTag("Result"));
+        }
+
+        @Override
+        public String toString() {
+            return "game " + number + " (line " + lineNumber + "): "
+                    + (passed ? "ok, " + plies + " plies" : "FAILED at ply " + (plies + 1) + ": " + error);
+        }
+    }
+
+    /**
+     * Totals for a whole run.
+     */
+    public static final class Summary {
+        public final long games;
+        public final long passed;
+        public final long plies;
+        public final long millis;
+        public final int threads;
+
+        Summary(long games, long passed, long plies, long millis, int threads) {
+            this.games = games;
+            this.passed = passed;
+            this.plies = plies;
+            this.millis = millis;
+            this.threads = threads;
+        }
+
+        public long failed() {
+            return games - passed;
+        }
+
+        public long gamesPerSecond() {
+            return millis == 0 ? games * 1000 : games * 1000 / millis;
+        }
+
+        public long pliesPerSecond() {
+            return millis == 0 ? plies * 1000 : plies * 1000 / millis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%,d games (%,d passed, %,d failed), %,d plies in %.2f s on %d threads: "
+                    + "%,d games/sec, %,d plies/sec", games, passed, failed(), plies, millis / 1000.0,
+                    threads, gamesPerSecond(), pliesPerSecond());
+        }
+    }
+
+    private final ForkJoinPool pool;
+
+    public PgnValidator(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Validates every game from the reader. The listener (which may be null) gets each game's
+     * result, in file order, on the calling thread.
+     */
+    public Summary validate(PgnReader reader, Consumer<GameResult> listener) throws IOException {
+        long start = System.currentTimeMillis();
+        long games = 0;
+        long passed = 0;
+        long plies = 0;
+
+        PgnGame[] batch = new PgnGame[BATCH_SIZE];
+        PgnGame[] nextBatch = new PgnGame[BATCH_SIZE];
+        GameResult[] results = new GameResult[BATCH_SIZE];
+        int count = readBatch(reader, batch);
+        while (count > 0) {
+            ForkJoinTask<Void> task = pool.submit(new ValidateTask(batch, results, 0, count));
+            // Read the next batch while this one is being checked
+            int nextCount = readBatch(reader, nextBatch);
+            task.join();
+
+            for (int i = 0; i < count; i++) {
+                GameResult result = results[i];
+                games++;
+                plies += result.plies;
+                if (result.passed) {
+                    passed++;
+                }
+                if (listener != null) {
+                    listener.accept(result);
+                }
+                results[i] = null;
+            }
+
+            PgnGame[] swap = batch;
+            batch = nextBatch;
+            nextBatch = swap;
+            count = nextCount;
+        }
+        return new Summary(games, passed, plies, System.currentTimeMillis() - start, pool.getParallelism());
+    }
+
+    private static int readBatch(PgnReader reader, PgnGame[] batch) throws IOException {
+        int count = 0;
+        PgnGame game;
+        while (count < batch.length && (game = reader.next()) != null) {
+            batch[count++] = game;
+        }
+        return count;
+    }
+
+    /**
+     * Splits a batch in halves until the pieces are small, then replays them on one Board.
+     */
+    private static final class ValidateTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final PgnGame[] games;
+        private final GameResult[] results;
+        private final int from;
+        private final int to;
+
+        ValidateTask(PgnGame[] games, GameResult[] results, int from, int to) {
+            this.games = games;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > LEAF_SIZE) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ValidateTask(games, results, from, middle),
+                          new ValidateTask(games, results, middle, to));
+                return;
+            }
+            Board board = new Board();
+            int[] buffer = new int[Move.MAX_MOVES];
+            int[][] moves = {new int[256]};
+            AsciiView view = new AsciiView();
+            for (int i = from; i < to; i++) {
+                results[i] = validate(games[i], board, buffer, moves, view);
+            }
+        }
+    }
+
+    /**
+     * Replays one game on the given board (its position is replaced).
+     */
+    public static GameResult validate(PgnGame game, Board board) {
+        return validate(game, board, new int[Move.MAX_MOVES], new int[][] {new int[256]}, new AsciiView());
+    }
+
+    // moves[0] collects the game's moves and is replaced by a larger array when it fills up
+    private static GameResult validate(PgnGame game, Board board, int[] buffer, int[][] moves, AsciiView view) {
+        String fen = game.getTag("FEN");
+        try {
+            board.setFen(fen != null ? fen : Board.START_FEN);
+        } catch (IllegalArgumentException e) {
+            return new GameResult(game, 0, e.getMessage());
+        }
+
+        byte[] text = game.text;
+        int plies = 0;
+        int i = game.movetextStart();
+        while (i < text.length) {
+            byte c = text[i];
+            if (c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == ')') {
+                i++; // A stray ')' is skipped too, so a broken file can't stall the scan
+            } else if (c == '{') {
+                i = skipPast(text, i, '}'); // Comment
+            } else if (c == ';') {
+                i = skipPast(text, i, '\n'); // Comment to the end of the line
+            } else if (c == '(') {
+                i = skipVariation(text, i); // Only the main line is checked
+            } else if (c == '$') {
+                i = tokenEnd(text, i); // Numeric annotation glyph
+            } else {
+                int end = tokenEnd(text, i);
+                int token = i;
+                i = end;
+
+                if (isResult(text, token, end)) {
+                    break;
+                }
+                // Move numbers ("12." or "12...") may be glued to the move that follows
+                if (c >= '1' && c <= '9') {
+                    while (token < end && text[token] >= '0' && text[token] <= '9') {
+                        token++;
+                    }
+                    if (token == end || text[token] != '.') {
+                        return new GameResult(game, plies, "unexpected '" + view.set(text, token, end - token) + "'");
+                    }
+                    while (token < end && text[token] == '.') {
+                        token++;
+                    }
+                    if (token == end) {
+                        continue;
+                    }
+                }
+                if (end - token == 4 && text[token] == 'e' && text[token + 1] == '.') {
+                    continue; // A separate "e.p." after an en passant capture
+                }
+
+                int move = San.resolve(board, view.set(text, token, end - token), buffer);
+                if (move < 0) {
+                    String reason = move == San.AMBIGUOUS ? "ambiguous" : move == San.ILLEGAL ? "illegal" : "not a move";
+                    return new GameResult(game, plies, "'" + view + "' is " + reason);
+                }
+                board.makeMove(move);
+                if (plies == moves[0].length) {
+                    moves[0] = Arrays.copyOf(moves[0], plies * 2);
+                }
+                moves[0][plies++] = move;
+            }
+        }
+        return new GameResult(game, plies, null, Arrays.copyOf(moves[0], plies));
+    }
+
+    private static int resultCode(String result) {
+        if (result == null) {
+            return GameArchive.UNKNOWN;
+        }
+        switch (result) {
+            case "1-0": return GameArchive.WHITE_WINS;
+            case "0-1": return GameArchive.BLACK_WINS;
+            case "1/2-1/2": return GameArchive.DRAW;
+            default: return GameArchive.UNKNOWN;
+        }
+    }
+
+    // "1-0", "0-1", "1/2-1/2" or "*"
+    private static boolean isResult(byte[] text, int start, int end) {
+        int length = end - start;
+        if (length == 1) {
+            return text[start] == '*';
+        }
+        if (length == 3) {
+            return (text[start] == '1' && text[start + 1] == '-' && text[start + 2] == '0')
+                || (text[start] == '0' && text[start + 1] == '-' && text[start + 2] == '1');
+        }
+        return length == 7 && text[start] == '1' && text[start + 1] == '/' && text[start + 3] == '-';
+    }
+
+    private static int tokenEnd(byte[] text, int i) {
+        while (i < text.length) {
+            byte c = text[i];
+            if (c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '{' || c == '(' || c == ')' || c == ';') {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    private static int skipPast(byte[] text, int i, char close) {
+        while (i < text.length && text[i] != close) {
+            i++;
+        }
+        return i + 1;
+    }
+
+    private static int skipVariation(byte[] text, int i) {
+        int depth = 0;
+        while (i < text.length) {
+            byte c = text[i];
+            if (c == '{') {
+                i = skipPast(text, i, '}');
+                continue;
+            }
+            if (c == '(') {
+                depth++;
+            } else if (c == ')' && --depth == 0) {
+                return i + 1;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Validates a PGN file and prints the failed games and the totals.
+     * Arguments: the file, then optionally the number of threads (default: all cores).
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: PgnValidator <file.pgn> [threads]");
+            return;
+        }
+        Path path = Paths.get(args[0]);
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try (PgnReader reader = PgnReader.open(path)) {
+            Summary summary = new PgnValidator(pool).validate(reader, result -> {
+                if (!result.passed) {
+                    System.out.println(result);
+                }
+            });
+            System.out.println(summary);
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -1,30 +1,66 @@
 package chess;
 
 public abstract class Piece {
-    protected Chess.Player player;
-    protected String pieceName; 
-    protected boolean hasMoved;
+    // Piece type indices, used by the Board to pick the matching bitboard
+    public static final int PAWN = 0;
+    public static final int KNIGHT = 1;
+    public static final int BISHOP = 2;
+    public static final int ROOK = 3;
+    public static final int QUEEN = 4;
+    public static final int KING = 5;
 
-    public Piece(Chess.Player player, String pieceName) {
+    // Pieces hold no game state (the Board keeps castling rights and the en passant square),
+    // so there is exactly one immutable instance per color and type, shared by every board
+    protected final Chess.Player player;
+    protected final String pieceName; 
+    protected final int type;
+
+    private static final Piece[] SHARED = new Piece[12];
+    static {
+        for (Chess.Player player : Chess.Player.values()) {
+            int base = player.ordinal() * 6;
+            SHARED[base + PAWN] = new Pawn(player);
+            SHARED[base + KNIGHT] = new Knight(player);
+            SHARED[base + BISHOP] = new Bishop(player);
+            SHARED[base + ROOK] = new Rook(player);
+            SHARED[base + QUEEN] = new Queen(player);
+            SHARED[base + KING] = new King(player);
+        }
+    }
+
+    Piece(Chess.Player player, String pieceName, int type) {
         this.player = player;
         this.pieceName = pieceName;
-        this.hasMoved = false;
+        this.type = type;
+    }
+
+    /**
+     * The shared piece of the given color and type (one of the type constants above).
+     */
+    public static Piece of(Chess.Player player, int type) {
+        if (type < PAWN || type > KING) {
+            throw new IllegalArgumentException("Unknown piece type " + type);
+        }
+        return SHARED[player.ordinal() * 6 + type];
     }
 
     public Chess.Player getPlayer() {
         return player;
     }
 
-    public String getPieceName() {
-        return pieceName;
+    public int getType() {
+        return type;
     }
 
-    public boolean hasMoved() {
-        return hasMoved;
+    /**
+     * 0 for white, 1 for black. Used as the color index into the Board's bitboards.
+     */
+    public int getColor() {
+        return player.ordinal();
     }
 
-    public void setMoved(boolean hasMoved) {
-        this.hasMoved = hasMoved;
+    public String getPieceName() {
+        return pieceName;
     }
 
     /**
@@ -33,33 +69,19 @@ public abstract class Piece {
      * @param startCol The starting file index (0-7)
      * @param endRow   The ending rank index (0-7)
      * @param endCol   The ending file index (0-7)
-     * @param board    The current 2D array of pieces
+     * @param board    The current board (pieces, castling rights and en passant square)
      * @return true if the piece can legally move to the destination, false otherwise
      */
-    public abstract boolean isValidMove(int startRow, int startCol, int endRow, int endCol, Piece[][] board);
+    public abstract boolean isValidMove(int startRow, int startCol, int endRow, int endCol, Board board);
     
     /**
      * Helper method for sliding pieces (Rook, Bishop, Queen).
      * Checks if all squares between the start and end coordinates are empty.
      */
-    protected boolean isPathClear(int startRow, int startCol, int endRow, int endCol, Piece[][] board) {
-        // Integer.compare returns -1 (if less), 0 (if equal), or 1 (if greater).
-        // This perfectly gives us our step direction for any straight or diagonal line!
-        int rowStep = Integer.compare(endRow, startRow);
-        int colStep = Integer.compare(endCol, startCol);
-
-        int currentRow = startRow + rowStep;
-        int currentCol = startCol + colStep;
-
-        // Traverse the path until we reach the destination square
-        while (currentRow != endRow || currentCol != endCol) {
-            if (board[currentRow][currentCol] != null) {
-                return false; // Path is blocked by another piece
-            }
-            currentRow += rowStep;
-            currentCol += colStep;
-        }
-
-        return true; // Path is perfectly clear
+    protected boolean isPathClear(int startRow, int startCol, int endRow, int endCol, Board board) {
+        // The squares in between come from a precomputed table, so one AND with the
+        // occupied squares answers for the whole path
+        long between = Attacks.BETWEEN[startRow * 8 + startCol][endRow * 8 + endCol];
+        return (between & board.getOccupied()) == 0;
     }
 }
\ No newline at end of file
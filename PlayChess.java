@@ -1,21 +1,29 @@
 package chess;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
 import java.util.ArrayList;
-import java.util.Scanner;
 
 public class PlayChess {
 
-	public static void main(String[] args) {
+	public static void main(String[] args) throws IOException {
 		// TODO Auto-generated method stub
-		Scanner sc = new Scanner(System.in);
-		Chess.start();
+		BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+		String line = in.readLine();
+		
+		// A chess GUI or tournament manager starts with "uci": from then on it talks to the engine
+		if (line != null && line.trim().equals("uci")) {
+			new UciEngine(in, System.out).run(line);
+			return;
+		}
 		
-		String line = sc.nextLine();
-		while (!line.equals("quit")) {
+		Chess.start();
+		while (line != null && !line.equals("quit")) {
 			if (line.equals("reset")) {
 				Chess.start();
 				System.out.println();
-				line = sc.nextLine();
+				line = in.readLine();
 				continue;
 			}
 			// move 
@@ -32,10 +40,8 @@ public class PlayChess {
 			System.out.println();
 			
 			// next line
-			line = sc.nextLine();
+			line = in.readLine();
 		}
-		
-		sc.close();
 	}
 	
 	static void printBoard(ArrayList<ReturnPiece> pieces) {
@@ -0,0 +1,245 @@
+package chess;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Answers "which games reached this position" from an index built by PositionIndexBuilder.
+ *
+ * File layout (all numbers little-endian):
+ *   header        magic "CHPI", version (u16), reserved (u16), entry count (u64)   - 16 bytes
+ *   buckets       BUCKETS + 1 entry numbers (u64 each): the first entry whose key's top
+ *                 BUCKET_BITS bits are >= the bucket number, padded to 16 bytes
+ *   entries       sorted by key, 16 bytes each: Zobrist key (u64), then
+ *                 game id (u32) << 32 | ply (u16) << 16 | next move (u16, GameArchive form)
+ *
+ * The file is memory-mapped. A lookup reads the key's bucket from the table and binary
+ * searches only the entries inside it, so it touches a handful of pages at most.
+ */
+public class PositionIndex implements Closeable {
+
+    static final int MAGIC = 0x49504843; // "CHPI" read as a little-endian int
+    static final int VERSION = 1;
+    static final int ENTRY_BYTES = 16;
+
+    static final int BUCKET_BITS = 16;
+    static final int BUCKETS = 1 << BUCKET_BITS;
+    static final long ENTRIES_OFFSET = (16 + 8L * (BUCKETS + 1) + 15) & ~15L;
+
+    // Stored as the next move of a game's final position
+    static final int NO_MOVE = 0;
+
+    private static final int WINDOW_SHIFT = 30;
+    private static final long WINDOW_SIZE = 1L << WINDOW_SHIFT;
+
+    /**
+     * What the index knows about one position.
+     */
+    public static final class Result {
+        // Times the position occurs across all games (repetitions within a game count)
+        public final long occurrences;
+        // Ids of the games that reach it, ascending, cut off at the requested limit
+        public final int[] games;
+        // Moves played from it (packed, see Move) and how often, most frequent first
+        public final int[] moves;
+        public final long[] counts;
+
+        Result(long occurrences, int[] games, int[] moves, long[] counts) {
+            this.occurrences = occurrences;
+            this.games = games;
+            this.moves = moves;
+            this.counts = counts;
+        }
+    }
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] windows;
+    private final long entryCount;
+    private final long[] buckets = new long[BUCKETS + 1];
+
+    private PositionIndex(FileChannel channel) throws IOException {
+        this.channel = channel;
+        long size = channel.size();
+        int count = (int) ((size + WINDOW_SIZE - 1) >>> WINDOW_SHIFT);
+        windows = new MappedByteBuffer[Math.max(count, 1)];
+        for (int i = 0; i < windows.length; i++) {
+            long start = (long) i << WINDOW_SHIFT;
+            windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.max(Math.min(size - start, WINDOW_SIZE), 0));
+            windows[i].order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        MappedByteBuffer header = windows[0];
+        if (size < ENTRIES_OFFSET || header.getInt(0) != MAGIC) {
+            throw new IOException("Not a position index");
+        }
+        if (header.getShort(4) != VERSION) {
+            throw new IOException("Unsupported position index version " + header.getShort(4));
+        }
+        entryCount = header.getLong(8);
+        if (size < ENTRIES_OFFSET + entryCount * ENTRY_BYTES) {
+            throw new IOException("Position index is truncated");
+        }
+        for (int i = 0; i <= BUCKETS; i++) {
+            buckets[i] = header.getLong(16 + 8 * i);
+        }
+    }
+
+    public static PositionIndex open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new PositionIndex(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Number of positions indexed.
+     */
+    public long size() {
+        return entryCount;
+    }
+
+    /**
+     * Looks up the board's position.
+     * @param maxGames the most game ids to return (the counts still cover every game)
+     */
+    public Result find(Board board, int maxGames) {
+        long key = board.getZobristKey();
+        long first = lowerBound(key);
+        long end = first;
+        while (end < entryCount && keyAt(end) == key) {
+            end++;
+        }
+
+        int[] games = new int[(int) Math.min(maxGames, end - first)];
+        int gameCount = 0;
+        int lastGame = -1;
+        // Next moves and their counts (in GameArchive form until the end)
+        int[] moves = new int[16];
+        long[] counts = new long[16];
+        int distinct = 0;
+        for (long i = first; i < end; i++) {
+            long value = valueAt(i);
+            int game = game(value);
+            if (game != lastGame && gameCount < games.length) {
+                games[gameCount++] = game;
+            }
+            lastGame = game;
+
+            int move = move(value);
+            if (move == NO_MOVE) {
+                continue;
+            }
+            int slot = 0;
+            while (slot < distinct && moves[slot] != move) {
+                slot++;
+            }
+            if (slot == distinct) {
+                if (distinct == moves.length) {
+                    moves = Arrays.copyOf(moves, distinct * 2);
+                    counts = Arrays.copyOf(counts, distinct * 2);
+                }
+                moves[distinct++] = move;
+            }
+            counts[slot]++;
+        }
+
+        // Most frequent first; a position has few distinct next moves, so insertion sort will do
+        for (int i = 1; i < distinct; i++) {
+            for (int j = i; j > 0 && counts[j] > counts[j - 1]; j--) {
+                long count = counts[j];
+                counts[j] = counts[j - 1];
+                counts[j - 1] = count;
+                int move = moves[j];
+                moves[j] = moves[j - 1];
+                moves[j - 1] = move;
+            }
+        }
+        int[] packed = new int[distinct];
+        for (int i = 0; i < distinct; i++) {
+            packed[i] = GameArchive.toMove(board, moves[i]);
+        }
+        return new Result(end - first, Arrays.copyOf(games, gameCount), packed, Arrays.copyOf(counts, distinct));
+    }
+
+    public Result find(Board board) {
+        return find(board, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // First entry whose key is >= key, searching only the key's bucket
+    private long lowerBound(long key) {
+        int bucket = bucket(key);
+        long lo = buckets[bucket];
+        long hi = buckets[bucket + 1];
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (Long.compareUnsigned(keyAt(mid), key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private long keyAt(long entry) {
+        long at = ENTRIES_OFFSET + entry * ENTRY_BYTES;
+        return windows[(int) (at >>> WINDOW_SHIFT)].getLong((int) (at & (WINDOW_SIZE - 1)));
+    }
+
+    private long valueAt(long entry) {
+        long at = ENTRIES_OFFSET + entry * ENTRY_BYTES + 8;
+        return windows[(int) (at >>> WINDOW_SHIFT)].getLong((int) (at & (WINDOW_SIZE - 1)));
+    }
+
+    static int bucket(long key) {
+        return (int) (key >>> (64 - BUCKET_BITS));
+    }
+
+    static long value(int game, int ply, int move) {
+        return ((long) game << 32) | ((long) ply << 16) | move;
+    }
+
+    static int game(long value) {
+        return (int) (value >>> 32);
+    }
+
+    static int ply(long value) {
+        return (int) (value >>> 16) & 0xFFFF;
+    }
+
+    static int move(long value) {
+        return (int) value & 0xFFFF;
+    }
+
+    /**
+     * Prints what the index knows about a position: java chess.PositionIndex games.idx "<FEN>"
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: java chess.PositionIndex <index> <FEN>");
+            System.exit(2);
+        }
+        try (PositionIndex index = PositionIndex.open(Paths.get(args[0]))) {
+            Result result = index.find(Board.fromFen(args[1]), 20);
+            System.out.printf("%,d occurrences; first games: %s%n", result.occurrences, Arrays.toString(result.games));
+            for (int i = 0; i < result.moves.length; i++) {
+                System.out.printf("  %-6s %,d%n", Move.toString(result.moves[i]), result.counts[i]);
+            }
+        }
+    }
+}
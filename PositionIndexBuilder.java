@@ -0,0 +1,121 @@
+package chess;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Builds a PositionIndex from a GameArchive.
+ *
+ * Every game is replayed and each position it passes through is recorded as one entry
+ * (Zobrist key, game id, ply, move played next). The entries go through an EntrySorter,
+ * which sorts them in fixed-size chunks on disk and merges the chunks into the index file,
+ * so the heap needed is the chunk (16 bytes per entry) plus a small read buffer per chunk,
+ * whatever the size of the archive.
+ */
+public class PositionIndexBuilder {
+
+    // Entries per in-memory chunk: 4M entries is 64 MB of heap
+    public static final int DEFAULT_CHUNK_ENTRIES = 1 << 22;
+
+    private static final int WRITE_BUFFER = 1 << 20;
+
+    private final int chunkEntries;
+    private final Path tempDirectory;
+
+    /**
+     * @param chunkEntries entries sorted in memory at a time
+     * @param tempDirectory where the sorted chunks are kept until the merge
+     */
+    public PositionIndexBuilder(int chunkEntries, Path tempDirectory) {
+        this.chunkEntries = chunkEntries;
+        this.tempDirectory = tempDirectory;
+    }
+
+    /**
+     * Indexes every game in the archive and writes the index to out.
+     * @return the number of positions indexed
+     */
+    public long build(GameArchive archive, Path out) throws IOException {
+        try (EntrySorter sorter = new EntrySorter(chunkEntries, tempDirectory)) {
+            Board board = new Board();
+            for (int game = 0; game < archive.size(); game++) {
+                int plies = archive.getPlies(game);
+                archive.replay(game, board, 0);
+                for (int ply = 0; ply < plies; ply++) {
+                    int move = archive.getMove(game, ply);
+                    sorter.add(board.getZobristKey(), PositionIndex.value(game, ply, move));
+                    board.makeMove(GameArchive.toMove(board, move));
+                }
+                // The final position, with no move after it
+                sorter.add(board.getZobristKey(), PositionIndex.value(game, plies, PositionIndex.NO_MOVE));
+            }
+            sorter.finish();
+            write(sorter, out);
+            return sorter.size();
+        }
+    }
+
+    /**
+     * Writes the index file: header, bucket table, then the entries in sorted order.
+     */
+    private static void write(EntrySorter sorter, Path out) throws IOException {
+        try (FileChannel channel = FileChannel.open(out, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            // buckets[b] = index of the first entry whose key's top bits are >= b
+            long[] buckets = new long[PositionIndex.BUCKETS + 1];
+            ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER).order(ByteOrder.LITTLE_ENDIAN);
+            channel.position(PositionIndex.ENTRIES_OFFSET);
+            long count = 0;
+            int bucket = 0;
+            while (sorter.next()) {
+                int b = PositionIndex.bucket(sorter.key());
+                while (bucket <= b) {
+                    buckets[bucket++] = count;
+                }
+                if (buffer.remaining() < PositionIndex.ENTRY_BYTES) {
+                    EntrySorter.drain(channel, buffer);
+                }
+                buffer.putLong(sorter.key()).putLong(sorter.value());
+                count++;
+            }
+            while (bucket <= PositionIndex.BUCKETS) {
+                buckets[bucket++] = count;
+            }
+            EntrySorter.drain(channel, buffer);
+
+            ByteBuffer header = ByteBuffer.allocate((int) PositionIndex.ENTRIES_OFFSET).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(PositionIndex.MAGIC).putShort((short) PositionIndex.VERSION).putShort((short) 0)
+                    .putLong(count);
+            for (long start : buckets) {
+                header.putLong(start);
+            }
+            header.clear();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+        }
+    }
+
+    /**
+     * Builds an index: java chess.PositionIndexBuilder games.bin games.idx [chunk entries]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: java chess.PositionIndexBuilder <archive> <index> [chunk entries]");
+            System.exit(2);
+        }
+        Path out = Paths.get(args[1]).toAbsolutePath();
+        int chunkEntries = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_CHUNK_ENTRIES;
+        long start = System.currentTimeMillis();
+        try (GameArchive archive = GameArchive.open(Paths.get(args[0]))) {
+            long positions = new PositionIndexBuilder(chunkEntries, out.getParent()).build(archive, out);
+            System.out.printf("%,d games, %,d positions indexed in %d ms%n",
+                    archive.size(), positions, System.currentTimeMillis() - start);
+        }
+    }
+}
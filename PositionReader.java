@@ -0,0 +1,96 @@
+package chess;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Streams positions out of a FEN or EPD file, one per line, onto a Board the caller reuses.
+ *
+ * The file is read through an NIO channel into one byte buffer, and each line is handed to
+ * Board's FEN reader as a view over that buffer, so reading millions of positions creates no
+ * Strings and no Boards. Blank lines and lines starting with '#' are skipped. For EPD lines
+ * the operations after the four position fields (e.g. "bm Nf3; id \"WAC.001\";") are
+ * available from getOperations until the next call to next.
+ *
+ * Typical use:
+ *   try (PositionReader reader = PositionReader.open(path)) {
+ *       Board board = new Board();
+ *       while (reader.next(board)) { ... }
+ *   }
+ */
+public class PositionReader implements Closeable {
+
+    private final LineReader reader;
+    private final AsciiView operations = new AsciiView();
+    private long positions;
+
+    public PositionReader(ReadableByteChannel channel) {
+        reader = new LineReader(channel);
+    }
+
+    public static PositionReader open(Path path) throws IOException {
+        return new PositionReader(FileChannel.open(path, StandardOpenOption.READ));
+    }
+
+    /**
+     * Loads the next position in the file onto board, replacing whatever was on it.
+     * @return false at the end of the file (the board is then left as it was)
+     * @throws IllegalArgumentException if a line is not valid FEN/EPD; the message gives its number
+     */
+    public boolean next(Board board) throws IOException {
+        while (reader.readLine()) {
+            CharSequence line = reader.line();
+            int length = line.length();
+            int start = 0;
+            while (start < length && (line.charAt(start) == ' ' || line.charAt(start) == '\t')) {
+                start++;
+            }
+            if (start == length || line.charAt(start) == '#') {
+                continue;
+            }
+            try {
+                int end = board.readFen(line, start, length);
+                while (end < length && (line.charAt(end) == ' ' || line.charAt(end) == '\t')) {
+                    end++;
+                }
+                reader.slice(operations, end, length);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Line " + reader.lineNumber() + ": " + e.getMessage(), e);
+            }
+            positions++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Whatever followed the position on the current line (EPD operations, or nothing for
+     * a complete FEN), with leading blanks removed. Only valid until the next call to next.
+     */
+    public CharSequence getOperations() {
+        return operations;
+    }
+
+    /**
+     * Number of the line the current position came from, starting at 1.
+     */
+    public long getLineNumber() {
+        return reader.lineNumber();
+    }
+
+    /**
+     * Positions read so far.
+     */
+    public long getPositionCount() {
+        return positions;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
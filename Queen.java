@@ -2,22 +2,21 @@ package chess;
 
 public class Queen extends Piece {
 
-    public Queen(Chess.Player player) {
-        super(player, player == Chess.Player.white ? "wQ" : "bQ");
+    Queen(Chess.Player player) {
+        super(player, player == Chess.Player.white ? "wQ" : "bQ", QUEEN);
     }
 
     @Override
-    public boolean isValidMove(int startRow, int startCol, int endRow, int endCol, Piece[][] board) {
-        boolean isStraight = (startRow == endRow || startCol == endCol);
-        boolean isDiagonal = (Math.abs(startRow - endRow) == Math.abs(startCol - endCol));
+    public boolean isValidMove(int startRow, int startCol, int endRow, int endCol, Board board) {
+        int start = startRow * 8 + startCol;
 
         // 1. Must move like a Rook or a Bishop
-        if (!isStraight && !isDiagonal) {
+        if (((Attacks.ROOK_RAYS[start] | Attacks.BISHOP_RAYS[start]) & (1L << (endRow * 8 + endCol))) == 0) {
             return false;
         }
 
         // 2. Cannot capture friendly pieces
-        Piece destinationPiece = board[endRow][endCol];
+        Piece destinationPiece = board.getPiece(endRow, endCol);
         if (destinationPiece != null && destinationPiece.getPlayer() == this.player) {
             return false;
         }
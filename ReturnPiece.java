@@ -1,5 +1,13 @@
 package chess;
 
+/**
+ * A piece and the square it stands on, as reported in ReturnPlay.piecesOnBoard.
+ *
+ * The pieces the game hands out are shared: there is one instance per (piece, square),
+ * reused by every board state of every game. Treat them as read-only. Setting a field on
+ * one would change that square in all states already returned and in all later ones.
+ * To get a piece that can be changed, make a new ReturnPiece and copy the fields.
+ */
 class ReturnPiece {
 	static enum PieceType {WP, WR, WN, WB, WQ, WK, 
 		            BP, BR, BN, BB, BK, BQ};
@@ -8,6 +16,28 @@ class ReturnPiece {
 	PieceType pieceType;
 	PieceFile pieceFile;
 	int pieceRank;  // 1..8
+	
+	// One shared instance per (piece, square), indexed [color * 6 + type][row * 8 + col] like
+	// the Board's bitboards, so building a board state allocates no pieces. Never modify them.
+	private static final ReturnPiece[][] SHARED = new ReturnPiece[12][64];
+	static {
+		String types = "PNBRQK";
+		for (int piece = 0; piece < 12; piece++) {
+			PieceType type = PieceType.valueOf((piece < 6 ? "W" : "B") + types.charAt(piece % 6));
+			for (int sq = 0; sq < 64; sq++) {
+				ReturnPiece rp = new ReturnPiece();
+				rp.pieceType = type;
+				rp.pieceFile = PieceFile.values()[sq & 7];
+				rp.pieceRank = 8 - (sq >>> 3);
+				SHARED[piece][sq] = rp;
+			}
+		}
+	}
+	
+	static ReturnPiece of(int piece, int sq) {
+		return SHARED[piece][sq];
+	}
+	
 	public String toString() {
 		return ""+pieceFile+pieceRank+":"+pieceType;
 	}
@@ -8,6 +8,8 @@ class ReturnPlay {
 				  CHECK, CHECKMATE_BLACK_WINS,	CHECKMATE_WHITE_WINS, 
 				  STALEMATE};
 	
+	// A fresh list on every play, so it may be changed; the pieces in it are shared and
+	// must not be (see ReturnPiece)
 	ArrayList<ReturnPiece> piecesOnBoard;
 	Message message;
 }
\ No newline at end of file
@@ -2,19 +2,19 @@ package chess;
 
 public class Rook extends Piece {
 
-    public Rook(Chess.Player player) {
-        super(player, player == Chess.Player.white ? "wR" : "bR");
+    Rook(Chess.Player player) {
+        super(player, player == Chess.Player.white ? "wR" : "bR", ROOK);
     }
 
     @Override
-    public boolean isValidMove(int startRow, int startCol, int endRow, int endCol, Piece[][] board) {
-        // 1. Must move in a straight line
-        if (startRow != endRow && startCol != endCol) {
+    public boolean isValidMove(int startRow, int startCol, int endRow, int endCol, Board board) {
+        // 1. Must move in a straight line (the Rook's lines from each square are precomputed)
+        if ((Attacks.ROOK_RAYS[startRow * 8 + startCol] & (1L << (endRow * 8 + endCol))) == 0) {
             return false;
         }
 
         // 2. Cannot capture friendly pieces
-        Piece destinationPiece = board[endRow][endCol];
+        Piece destinationPiece = board.getPiece(endRow, endCol);
         if (destinationPiece != null && destinationPiece.getPlayer() == this.player) {
             return false;
         }
@@ -0,0 +1,148 @@
+package chess;
+
+/**
+ * Standard Algebraic Notation, as used in PGN: "e4", "Nbd7", "exd6", "R1a3", "e8=Q+", "O-O-O".
+ *
+ * A SAN move only makes sense in a position, so it is resolved by matching it against the
+ * Board's legal moves. Check and annotation marks ("+", "#", "!", "?") are accepted and
+ * ignored, as are the "e.p." suffix, the "x" being left out of captures, "0-0" for
+ * castling and a promotion written without "=".
+ */
+public final class San {
+
+    // Error codes (always negative)
+    public static final int MALFORMED = -1;  // not SAN at all
+    public static final int ILLEGAL = -2;    // no legal move fits
+    public static final int AMBIGUOUS = -3;  // more than one legal move fits
+
+    private static final String PIECE_LETTERS = "PNBRQK";
+
+    private San() {
+    }
+
+    /**
+     * Finds the legal move written as text[start, end) in the board's position.
+     * @param buffer scratch space for the move generator (Move.MAX_MOVES entries)
+     * @return the packed move (see Move), or one of the negative error codes
+     */
+    public static int resolve(Board board, CharSequence text, int start, int end, int[] buffer) {
+        // Drop check, mate and annotation marks, and a trailing "e.p."
+        while (end > start && isMark(text.charAt(end - 1))) {
+            end--;
+        }
+        if (end - start > 4 && text.charAt(end - 4) == 'e' && text.charAt(end - 3) == '.'
+                && text.charAt(end - 2) == 'p' && text.charAt(end - 1) == '.') {
+            end -= 4;
+        }
+        if (end <= start) {
+            return MALFORMED;
+        }
+
+        int count = board.generateLegalMoves(buffer);
+
+        // Castling: "O-O" / "O-O-O" (or with zeros)
+        char first = text.charAt(start);
+        if (first == 'O' || first == '0') {
+            int length = end - start;
+            if ((length != 3 && length != 5) || !isCastling(text, start, end)) {
+                return MALFORMED;
+            }
+            int delta = length == 3 ? 2 : -2;
+            for (int i = 0; i < count; i++) {
+                int move = buffer[i];
+                if (Move.isCastle(move) && Move.to(move) - Move.from(move) == delta) {
+                    return move;
+                }
+            }
+            return ILLEGAL;
+        }
+
+        // Piece letter (none, or rarely "P", for pawns)
+        int i = start;
+        int type = Piece.PAWN;
+        if (first >= 'A' && first <= 'Z') {
+            type = PIECE_LETTERS.indexOf(first);
+            if (type < 0) {
+                return MALFORMED;
+            }
+            i++;
+        }
+
+        // Promotion at the end: "=Q" or just "Q"
+        int promotion = 0;
+        if (type == Piece.PAWN && end - i >= 3) {
+            int letter = PIECE_LETTERS.indexOf(Character.toUpperCase(text.charAt(end - 1)));
+            if (letter > Piece.PAWN && letter < Piece.KING) {
+                promotion = letter;
+                end--;
+                if (text.charAt(end - 1) == '=') {
+                    end--;
+                }
+            }
+        }
+
+        // The destination is always the last two characters
+        if (end - i < 2) {
+            return MALFORMED;
+        }
+        int to = MoveParser.square(text, end - 2, end);
+        if (to < 0) {
+            return MALFORMED;
+        }
+        end -= 2;
+
+        // What's left is an optional disambiguating file and/or rank, then an optional 'x'
+        if (end > i && text.charAt(end - 1) == 'x') {
+            end--;
+        }
+        int fromCol = -1;
+        int fromRow = -1;
+        for (; i < end; i++) {
+            char c = text.charAt(i);
+            if (c >= 'a' && c <= 'h' && fromCol < 0) {
+                fromCol = c - 'a';
+            } else if (c >= '1' && c <= '8' && fromRow < 0) {
+                fromRow = '8' - c;
+            } else {
+                return MALFORMED;
+            }
+        }
+
+        int found = ILLEGAL;
+        for (int m = 0; m < count; m++) {
+            int move = buffer[m];
+            int from = Move.from(move);
+            if (Move.to(move) != to || Move.promotion(move) != promotion
+                    || (board.getMailbox(from) - 1) % 6 != type
+                    || (fromCol >= 0 && (from & 7) != fromCol)
+                    || (fromRow >= 0 && (from >>> 3) != fromRow)
+                    || Move.isCastle(move)) {
+                continue;
+            }
+            if (found >= 0) {
+                return AMBIGUOUS;
+            }
+            found = move;
+        }
+        return found;
+    }
+
+    public static int resolve(Board board, CharSequence text, int[] buffer) {
+        return resolve(board, text, 0, text.length(), buffer);
+    }
+
+    private static boolean isCastling(CharSequence text, int start, int end) {
+        char letter = text.charAt(start);
+        for (int i = start; i < end; i++) {
+            char expected = ((i - start) & 1) == 0 ? letter : '-';
+            if (text.charAt(i) != expected) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isMark(char c) {
+        return c == '+' || c == '#' || c == '!' || c == '?';
+    }
+}
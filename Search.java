@@ -0,0 +1,604 @@
+package chess;
+
+import java.util.Arrays;
+
+/**
+ * Alpha-beta search engine (negamax form) with iterative deepening.
+ *
+ * Each iteration searches one ply deeper than the last. Moves come from a MovePicker, in
+ * stages: the principal variation found by the previous iteration and the transposition
+ * table's best move first, then good captures, killer moves and quiet moves by their history
+ * score, so most cutoffs happen on the first move tried and the rest are rarely generated.
+ * At the horizon a quiescence search plays out the captures, so no position is judged in
+ * mid-exchange.
+ *
+ * The search plays moves on the Board it is given with makeMove/unmakeMove and leaves it
+ * exactly as it found it. One Search object must only be used by one thread at a time.
+ */
+public class Search {
+
+    public static final int MAX_PLY = 128;
+    public static final int INFINITY = 32000;
+    // Mate scores are MATE minus the distance (in plies) to the mate
+    public static final int MATE = 30000;
+
+    // Material values indexed by piece type
+    static final int[] PIECE_VALUES = { 100, 320, 330, 500, 900, 0 };
+    // Allowance for positional gains in quiescence delta pruning
+    static final int DELTA_MARGIN = 200;
+    // History scores stay within +-MAX_HISTORY
+    static final int MAX_HISTORY = 16384;
+    // Cutoffs are counted by the number of the move that caused them, the last bucket
+    // holding everything from that move on
+    public static final int CUTOFF_BUCKETS = 8;
+
+    /**
+     * What a search found, plus the counters needed to judge its speed.
+     */
+    public static class Result {
+        public final int bestMove;
+        public final int score;
+        public final int depth;
+        public final int[] pv;
+        public final long nodes;
+        public final long millis;
+        public final long ttProbes;
+        public final long ttHits;
+        // Beta cutoffs by the number of the move that caused them (see CUTOFF_BUCKETS) and
+        // by the move picker stage it came from (see MovePicker.STAGE_NAMES)
+        public final long[] cutoffsByMove;
+        public final long[] cutoffsByStage;
+
+        Result(int bestMove, int score, int depth, int[] pv, long nodes, long millis, long ttProbes, long ttHits,
+                long[] cutoffsByMove, long[] cutoffsByStage) {
+            this.bestMove = bestMove;
+            this.score = score;
+            this.depth = depth;
+            this.pv = pv;
+            this.nodes = nodes;
+            this.millis = millis;
+            this.ttProbes = ttProbes;
+            this.ttHits = ttHits;
+            this.cutoffsByMove = cutoffsByMove;
+            this.cutoffsByStage = cutoffsByStage;
+        }
+
+        public long nodesPerSecond() {
+            return millis == 0 ? nodes * 1000 : nodes * 1000 / millis;
+        }
+
+        public double ttHitRate() {
+            return ttProbes == 0 ? 0.0 : (double) ttHits / ttProbes;
+        }
+
+        /**
+         * Share of beta cutoffs caused by the first move searched: the usual measure of how
+         * good the move ordering is.
+         */
+        public double firstMoveCutoffRate() {
+            long total = 0;
+            for (long count : cutoffsByMove) {
+                total += count;
+            }
+            return total == 0 ? 0.0 : (double) cutoffsByMove[0] / total;
+        }
+
+        /**
+         * Where the cutoffs came from, for tuning the move ordering, e.g.
+         * "cutoffs 1234: move 1 90.1% 2 5.0% ... 8+ 0.2%, hash 61.0% good captures 20.3% ...".
+         */
+        public String cutoffReport() {
+            long total = 0;
+            for (long count : cutoffsByMove) {
+                total += count;
+            }
+            StringBuilder sb = new StringBuilder("cutoffs ").append(total).append(": move");
+            for (int i = 0; i < cutoffsByMove.length; i++) {
+                sb.append(' ').append(i + 1).append(i == cutoffsByMove.length - 1 ? "+ " : " ")
+                  .append(String.format("%.1f%%", percent(cutoffsByMove[i], total)));
+            }
+            sb.append(',');
+            for (int i = 0; i < cutoffsByStage.length; i++) {
+                sb.append(' ').append(MovePicker.STAGE_NAMES[i]).append(' ')
+                  .append(String.format("%.1f%%", percent(cutoffsByStage[i], total)));
+            }
+            return sb.toString();
+        }
+
+        private static double percent(long count, long total) {
+            return total == 0 ? 0.0 : count * 100.0 / total;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("depth ").append(depth).append(" score ").append(score)
+              .append(" nodes ").append(nodes).append(" nps ").append(nodesPerSecond())
+              .append(String.format(" tthit %.1f%%", ttHitRate() * 100))
+              .append(String.format(" cut1st %.1f%%", firstMoveCutoffRate() * 100)).append(" pv");
+            for (int move : pv) {
+                sb.append(' ').append(Move.toString(move));
+            }
+            return sb.toString();
+        }
+    }
+
+    private final TranspositionTable tt;
+    private Board board;
+    // Exact results for endings with few pieces, or null
+    private Tablebase tablebase;
+    // Static evaluation, or null for plain material
+    private Evaluator evaluator;
+
+    // Per-ply move pickers for the main search, and move lists and ordering scores for the
+    // quiescence search, allocated once
+    private final MovePicker[] pickers = new MovePicker[MAX_PLY];
+    private final int[][] moves = new int[MAX_PLY][Move.MAX_MOVES];
+    private final int[][] moveScores = new int[MAX_PLY][Move.MAX_MOVES];
+    // Quiet moves searched so far at each ply, which lose history score if another one cuts off
+    private final int[][] quietsSearched = new int[MAX_PLY][Move.MAX_MOVES];
+
+    // Two killer moves per ply: quiet moves that caused a cutoff there, latest first
+    private final int[] killers = new int[MAX_PLY * 2];
+    // How often each quiet move (side, from, to) caused a cutoff, see MovePicker.historyIndex
+    private final int[] history = new int[2 * 64 * 64];
+    private final long[] cutoffsByMove = new long[CUTOFF_BUCKETS];
+    private final long[] cutoffsByStage = new long[MovePicker.STAGES];
+
+    // Triangular principal variation table: pv[ply] holds the best line from that ply onwards
+    private final int[][] pv = new int[MAX_PLY + 1][MAX_PLY + 1];
+    private final int[] pvLength = new int[MAX_PLY + 1];
+    // Best line of the last completed iteration, searched first in the next one
+    private final int[] previousPv = new int[MAX_PLY];
+    private int previousPvLength;
+    private boolean followPv;
+
+    private long nodes;
+    private long ttProbes;
+    private long ttHits;
+    // Time to stop, in System.currentTimeMillis terms; may be changed while the search runs
+    private volatile long deadline = Long.MAX_VALUE;
+    private volatile boolean stopped;
+    // The first iteration always runs to the end, so there is a move to return
+    private boolean canStop;
+    // Non-zero for Lazy SMP helper threads: perturbs the order of quiet moves
+    private int orderingSeed;
+
+    public Search(TranspositionTable tt) {
+        this.tt = tt;
+        for (int ply = 0; ply < MAX_PLY; ply++) {
+            pickers[ply] = new MovePicker();
+        }
+    }
+
+    /**
+     * Makes the search use a tablebase (null for none): positions it holds are scored exactly
+     * instead of being searched further.
+     */
+    public void setTablebase(Tablebase tablebase) {
+        this.tablebase = tablebase;
+    }
+
+    /**
+     * Sets the static evaluation used at the leaves (null for plain material, the default).
+     * The evaluator must not be shared with another thread's search (see Evaluator.copy).
+     */
+    public void setEvaluator(Evaluator evaluator) {
+        this.evaluator = evaluator;
+    }
+
+    /**
+     * Searches the side to move's best move, deepening one ply at a time until maxDepth
+     * is reached or maxMillis have passed (0 means no time limit).
+     * The result is always that of the deepest fully completed iteration.
+     */
+    public Result search(Board board, int maxDepth, long maxMillis) {
+        tt.newSearch();
+        prepare(maxMillis);
+        return iterate(board, maxDepth, 0);
+    }
+
+    /**
+     * The iterative deepening loop, without starting a new table generation.
+     * Lazy SMP helper threads (helper > 0) run it too; odd helpers search one ply deeper than
+     * the main thread and every helper shuffles its quiet moves a little differently, so the
+     * threads spread out over the tree and fill the shared table with useful entries.
+     */
+    Result iterate(Board board, int maxDepth, int helper) {
+        if (evaluator == null) {
+            return deepen(board, maxDepth, helper);
+        }
+        evaluator.attach(board);
+        try {
+            return deepen(board, maxDepth, helper);
+        } finally {
+            evaluator.detach(board);
+        }
+    }
+
+    private Result deepen(Board board, int maxDepth, int helper) {
+        this.board = board;
+        long start = System.currentTimeMillis();
+        nodes = 0;
+        ttProbes = 0;
+        ttHits = 0;
+        previousPvLength = 0;
+        orderingSeed = helper * 0x9E3779B9;
+        Arrays.fill(cutoffsByMove, 0);
+        Arrays.fill(cutoffsByStage, 0);
+        // Killers are about positions of the last search; history still says something, but
+        // less than what this search will find
+        Arrays.fill(killers, 0);
+        for (int i = 0; i < history.length; i++) {
+            history[i] /= 2;
+        }
+
+        Result result = null;
+        for (int depth = 1 + (helper & 1); depth <= Math.min(maxDepth, MAX_PLY - 1); depth++) {
+            followPv = true;
+            canStop = depth > 1;
+            int score = negamax(depth, 0, -INFINITY, INFINITY);
+            if (stopped && canStop) {
+                break; // Unfinished iteration: keep the previous answer
+            }
+
+            previousPvLength = pvLength[0];
+            System.arraycopy(pv[0], 0, previousPv, 0, previousPvLength);
+            int[] line = Arrays.copyOf(previousPv, previousPvLength);
+            result = new Result(previousPvLength > 0 ? previousPv[0] : 0, score, depth, line,
+                    nodes, System.currentTimeMillis() - start, ttProbes, ttHits,
+                    cutoffsByMove.clone(), cutoffsByStage.clone());
+
+            if (stopped || Math.abs(score) >= MATE - MAX_PLY) {
+                break; // Out of time, or a forced mate was found
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Asks a running search to finish as soon as possible (safe to call from another thread).
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Changes the time limit of a running search to maxMillis from now (0 for none), for
+     * example when a ponder search becomes a real one. Safe to call from another thread.
+     */
+    public void setTimeLimit(long maxMillis) {
+        deadline = maxMillis > 0 ? System.currentTimeMillis() + maxMillis : Long.MAX_VALUE;
+    }
+
+    // Clears the stop flag and sets the time limit before the search starts rather than inside
+    // iterate, so a stop() or setTimeLimit that arrives before a search thread gets going is not lost
+    void prepare(long maxMillis) {
+        stopped = false;
+        setTimeLimit(maxMillis);
+    }
+
+    /**
+     * Nodes searched so far by this object. Each thread has its own Search, so reading the
+     * counters of all threads while they run needs no locking (the value may be slightly stale).
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    public long getTtProbes() {
+        return ttProbes;
+    }
+
+    public long getTtHits() {
+        return ttHits;
+    }
+
+    /**
+     * Cutoff counters so far (see Result.cutoffsByMove and cutoffsByStage); the arrays are
+     * the live ones, to be read, not changed.
+     */
+    long[] getCutoffsByMove() {
+        return cutoffsByMove;
+    }
+
+    long[] getCutoffsByStage() {
+        return cutoffsByStage;
+    }
+
+    private int negamax(int depth, int ply, int alpha, int beta) {
+        if (depth == 0) {
+            return quiesce(ply, alpha, beta);
+        }
+        pvLength[ply] = ply;
+        if ((++nodes & 2047) == 0 && System.currentTimeMillis() >= deadline) {
+            stopped = true;
+        }
+        if (stopped && canStop) {
+            return 0;
+        }
+
+        // A position seen before on the way here, or one the fifty-move rule ends, is a draw
+        if (ply > 0 && (board.isRepetition() || board.isFiftyMoveDraw())) {
+            return 0;
+        }
+
+        // Transposition table: reuse an earlier result if it was searched deeply enough
+        long key = board.getZobristKey();
+        ttProbes++;
+        long entry = tt.probe(key);
+        int ttMove = 0;
+        if (entry != 0) {
+            ttHits++;
+            ttMove = TranspositionTable.move(entry);
+            if (ply > 0 && TranspositionTable.depth(entry) >= depth) {
+                int score = scoreFromTable(TranspositionTable.score(entry), ply);
+                int bound = TranspositionTable.bound(entry);
+                if (bound == TranspositionTable.EXACT
+                        || (bound == TranspositionTable.LOWER && score >= beta)
+                        || (bound == TranspositionTable.UPPER && score <= alpha)) {
+                    return score;
+                }
+            }
+        }
+
+        // Tablebase: an exact result, below the root so that there is still a move to return
+        if (tablebase != null && ply > 0) {
+            int score = tablebase.probe(board);
+            if (score != Tablebase.NOT_FOUND) {
+                return scoreFromTable(score, ply);
+            }
+        }
+
+        if (ply >= MAX_PLY - 1) {
+            return evaluate();
+        }
+
+        int pvMove = 0;
+        if (followPv) {
+            if (ply < previousPvLength) {
+                pvMove = previousPv[ply];
+            } else {
+                followPv = false;
+            }
+        }
+        MovePicker picker = pickers[ply];
+        picker.init(board, pvMove, ttMove, killers[ply * 2], killers[ply * 2 + 1], history, orderingSeed);
+
+        int originalAlpha = alpha;
+        int bestScore = -INFINITY;
+        int bestMove = 0;
+        int searched = 0;
+        int quiets = 0;
+        int move;
+        while ((move = picker.next()) != 0) {
+            // Once we step off the old PV, the moves below this one are no longer on it
+            if (searched++ == 0 && move != pvMove) {
+                followPv = false;
+            }
+            boolean quiet = !Move.isCapture(move) && Move.promotion(move) == 0;
+
+            board.makeMove(move);
+            int score = -negamax(depth - 1, ply + 1, -beta, -alpha);
+            board.unmakeMove();
+            if (stopped && canStop) {
+                return 0;
+            }
+
+            if (score > bestScore) {
+                bestScore = score;
+                bestMove = move;
+                if (score > alpha) {
+                    alpha = score;
+                    // Extend the principal variation with this move and the line below it
+                    pv[ply][ply] = move;
+                    System.arraycopy(pv[ply + 1], ply + 1, pv[ply], ply + 1, pvLength[ply + 1] - ply - 1);
+                    pvLength[ply] = Math.max(pvLength[ply + 1], ply + 1);
+                    if (alpha >= beta) {
+                        // Beta cutoff: the opponent will avoid this position
+                        cutoffsByMove[Math.min(searched, CUTOFF_BUCKETS) - 1]++;
+                        cutoffsByStage[picker.stage()]++;
+                        if (quiet) {
+                            rewardQuiet(ply, depth, move, quiets);
+                        }
+                        break;
+                    }
+                }
+            }
+            if (quiet) {
+                quietsSearched[ply][quiets++] = move;
+            }
+        }
+        if (searched == 0) {
+            // No legal moves: checkmated (a loss, sooner is worse) or stalemated (a draw)
+            return board.isInCheck(board.getSideToMove()) ? -MATE + ply : 0;
+        }
+
+        int bound = bestScore >= beta ? TranspositionTable.LOWER
+                : bestScore > originalAlpha ? TranspositionTable.EXACT : TranspositionTable.UPPER;
+        tt.store(key, bestMove, scoreToTable(bestScore, ply), depth, bound);
+        return bestScore;
+    }
+
+    /**
+     * Quiescence search: only captures (and Queen promotions) are played, until the position
+     * is quiet. The side to move may also stand pat on the static evaluation, as nobody is
+     * forced to capture, so that score is a lower bound. Captures are skipped when even
+     * winning the piece outright can't lift the score to alpha (delta pruning) or when they
+     * lose material on the square (see Board.see). In check there is no standing pat: every
+     * evasion is searched, and having none is mate.
+     */
+    private int quiesce(int ply, int alpha, int beta) {
+        pvLength[ply] = ply;
+        if ((++nodes & 2047) == 0 && System.currentTimeMillis() >= deadline) {
+            stopped = true;
+        }
+        if (stopped && canStop) {
+            return 0;
+        }
+        if (board.isRepetition() || board.isFiftyMoveDraw()) {
+            return 0;
+        }
+        if (ply >= MAX_PLY - 1) {
+            return evaluate();
+        }
+
+        int[] list = moves[ply];
+        boolean inCheck = board.isInCheck(board.getSideToMove());
+        int standPat = 0;
+        int count;
+        if (inCheck) {
+            count = board.generateLegalMoves(list);
+            if (count == 0) {
+                return -MATE + ply;
+            }
+        } else {
+            standPat = evaluate();
+            if (standPat >= beta) {
+                return standPat;
+            }
+            alpha = Math.max(alpha, standPat);
+            count = board.generateLegalCaptures(list);
+        }
+        int[] scores = moveScores[ply];
+        for (int i = 0; i < count; i++) {
+            scores[i] = Move.isCapture(list[i]) ? mvvLva(list[i]) : Move.promotion(list[i]);
+        }
+
+        int bestScore = inCheck ? -INFINITY : standPat;
+        for (int i = 0; i < count; i++) {
+            int move = pickNext(ply, list, count, i);
+            if (!inCheck) {
+                int promotion = Move.promotion(move);
+                if (promotion != 0 && promotion != Piece.QUEEN) {
+                    continue; // A Queen is always at least as good
+                }
+                if (standPat + materialGain(move) + DELTA_MARGIN <= alpha || board.see(move) < 0) {
+                    continue;
+                }
+            }
+
+            board.makeMove(move);
+            int score = -quiesce(ply + 1, -beta, -alpha);
+            board.unmakeMove();
+            if (stopped && canStop) {
+                return 0;
+            }
+
+            if (score > bestScore) {
+                bestScore = score;
+                if (score > alpha) {
+                    alpha = score;
+                    pv[ply][ply] = move;
+                    System.arraycopy(pv[ply + 1], ply + 1, pv[ply], ply + 1, pvLength[ply + 1] - ply - 1);
+                    pvLength[ply] = Math.max(pvLength[ply + 1], ply + 1);
+                    if (alpha >= beta) {
+                        break;
+                    }
+                }
+            }
+        }
+        return bestScore;
+    }
+
+    /**
+     * Material the move wins outright: the captured piece plus what a promotion adds.
+     */
+    private int materialGain(int move) {
+        int gain = 0;
+        if (Move.isEnPassant(move)) {
+            gain = PIECE_VALUES[Piece.PAWN];
+        } else if (Move.isCapture(move)) {
+            int to = Move.to(move);
+            gain = PIECE_VALUES[board.getPiece(to >>> 3, to & 7).getType()];
+        }
+        int promotion = Move.promotion(move);
+        if (promotion != 0) {
+            gain += PIECE_VALUES[promotion] - PIECE_VALUES[Piece.PAWN];
+        }
+        return gain;
+    }
+
+    /**
+     * A quiet move caused a cutoff: it becomes the first killer of its ply, and gains history
+     * score while the quiet moves searched before it lose some. Deeper cutoffs count for more.
+     */
+    private void rewardQuiet(int ply, int depth, int move, int quietsBefore) {
+        if (killers[ply * 2] != move) {
+            killers[ply * 2 + 1] = killers[ply * 2];
+            killers[ply * 2] = move;
+        }
+        int side = board.getSideToMove().ordinal();
+        int bonus = Math.min(depth * depth, 400);
+        addHistory(MovePicker.historyIndex(side, move), bonus);
+        int[] searched = quietsSearched[ply];
+        for (int i = 0; i < quietsBefore; i++) {
+            addHistory(MovePicker.historyIndex(side, searched[i]), -bonus);
+        }
+    }
+
+    // Moves the score towards +-MAX_HISTORY by less the closer it already is, so it stays in range
+    private void addHistory(int index, int bonus) {
+        history[index] += bonus - history[index] * Math.abs(bonus) / MAX_HISTORY;
+    }
+
+    /**
+     * Capture ordering: most valuable victim first, then least valuable attacker.
+     */
+    private int mvvLva(int move) {
+        int from = Move.from(move);
+        int to = Move.to(move);
+        Piece victim = board.getPiece(to >>> 3, to & 7);
+        int victimValue = victim == null ? PIECE_VALUES[Piece.PAWN] : PIECE_VALUES[victim.getType()];
+        return victimValue * 10 - board.getPiece(from >>> 3, from & 7).getType();
+    }
+
+    /**
+     * Selection sort step: swaps the best remaining move into position i and returns it.
+     * Cheaper than a full sort when a cutoff comes early.
+     */
+    private int pickNext(int ply, int[] list, int count, int i) {
+        int[] scores = moveScores[ply];
+        int best = i;
+        for (int j = i + 1; j < count; j++) {
+            if (scores[j] > scores[best]) {
+                best = j;
+            }
+        }
+        int move = list[best];
+        list[best] = list[i];
+        list[i] = move;
+        int score = scores[best];
+        scores[best] = scores[i];
+        scores[i] = score;
+        return move;
+    }
+
+    /**
+     * The evaluator's score, or else the material balance, from the side to move's point of view.
+     */
+    private int evaluate() {
+        if (evaluator != null) {
+            return evaluator.evaluate(board);
+        }
+        int score = 0;
+        for (int type = Piece.PAWN; type < Piece.KING; type++) {
+            score += PIECE_VALUES[type] * (Long.bitCount(board.getPieces(Chess.Player.white, type))
+                    - Long.bitCount(board.getPieces(Chess.Player.black, type)));
+        }
+        return board.getSideToMove() == Chess.Player.white ? score : -score;
+    }
+
+    // Mate scores are stored relative to the node, not the root, so they stay valid at any ply
+    private static int scoreToTable(int score, int ply) {
+        if (score >= MATE - MAX_PLY) return score + ply;
+        if (score <= -MATE + MAX_PLY) return score - ply;
+        return score;
+    }
+
+    private static int scoreFromTable(int score, int ply) {
+        if (score >= MATE - MAX_PLY) return score - ply;
+        if (score <= -MATE + MAX_PLY) return score + ply;
+        return score;
+    }
+}
@@ -0,0 +1,189 @@
+package chess;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Holds many concurrent GameSessions and runs their moves.
+ *
+ * Moves for different sessions run in parallel; moves for the same session run one at a time,
+ * in the order they were submitted. Each session has its own queue and a "scheduled" flag:
+ * whoever flips the flag hands the queue to the executor, which drains it. There is no lock
+ * shared between sessions, so one busy game never holds up another.
+ *
+ * Sessions that receive no moves for a while can be evicted, either by calling evictIdle or
+ * by giving the registry an idle timeout.
+ */
+public class SessionRegistry {
+
+    /**
+     * A session plus its queue of pending work.
+     */
+    private static final class Slot {
+        final GameSession session = new GameSession();
+        final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+        final AtomicBoolean scheduled = new AtomicBoolean();
+    }
+
+    private final ConcurrentHashMap<Long, Slot> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final ExecutorService executor;
+    private final ScheduledExecutorService evictor;
+
+    /**
+     * A registry that never evicts on its own, running moves on virtual threads when the
+     * JVM has them (Java 21+) and on a work-stealing pool otherwise.
+     */
+    public SessionRegistry() {
+        this(defaultExecutor(), 0);
+    }
+
+    /**
+     * @param executor      runs the moves; not shut down by the registry unless close() is called
+     * @param idleTimeoutMs sessions idle this long are evicted automatically (0 to disable)
+     */
+    public SessionRegistry(ExecutorService executor, long idleTimeoutMs) {
+        this.executor = executor;
+        if (idleTimeoutMs > 0) {
+            evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "session-evictor");
+                t.setDaemon(true);
+                return t;
+            });
+            long period = Math.max(1, idleTimeoutMs / 2);
+            evictor.scheduleWithFixedDelay(() -> evictIdle(idleTimeoutMs), period, period, TimeUnit.MILLISECONDS);
+        } else {
+            evictor = null;
+        }
+    }
+
+    /**
+     * Virtual-thread-per-task executor if this JVM supports it. Looked up reflectively so the
+     * code still builds and runs on Java 17, where it falls back to a work-stealing pool.
+     */
+    static ExecutorService defaultExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newWorkStealingPool();
+        }
+    }
+
+    /**
+     * Starts a new game and returns its id.
+     */
+    public long create() {
+        long id = nextId.getAndIncrement();
+        sessions.put(id, new Slot());
+        return id;
+    }
+
+    /**
+     * The session with this id, or null if it doesn't exist or was evicted.
+     * Don't call play on it directly while moves are being submitted for it.
+     */
+    public GameSession get(long id) {
+        Slot slot = sessions.get(id);
+        return slot == null ? null : slot.session;
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    /**
+     * Queues a move for a session. The future completes with the result once the move has been
+     * played, after every move submitted to that session before it.
+     * Fails with IllegalArgumentException if there is no such session.
+     */
+    public CompletableFuture<ReturnPlay> submit(long id, String move) {
+        Slot slot = sessions.get(id);
+        if (slot == null) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("No session " + id));
+        }
+        slot.session.touch();
+
+        CompletableFuture<ReturnPlay> future = new CompletableFuture<>();
+        slot.pending.add(() -> {
+            try {
+                future.complete(slot.session.play(move));
+            } catch (Throwable e) {
+                // Errors too (e.g. StackOverflowError): the caller must never wait forever
+                future.completeExceptionally(e);
+            }
+        });
+        schedule(slot);
+        return future;
+    }
+
+    /**
+     * Hands the slot to the executor unless it is already queued or running there.
+     */
+    private void schedule(Slot slot) {
+        if (slot.scheduled.compareAndSet(false, true)) {
+            executor.execute(() -> drain(slot));
+        }
+    }
+
+    private void drain(Slot slot) {
+        try {
+            Runnable task;
+            while ((task = slot.pending.poll()) != null) {
+                task.run();
+            }
+        } finally {
+            // Even if a task threw, so the session's later moves still get run
+            slot.scheduled.set(false);
+            // A move may have been queued after the last poll but before the flag was cleared
+            if (!slot.pending.isEmpty()) {
+                schedule(slot);
+            }
+        }
+    }
+
+    /**
+     * Removes a session. Moves already queued for it still run.
+     */
+    public boolean remove(long id) {
+        return sessions.remove(id) != null;
+    }
+
+    /**
+     * Removes every session with no move submitted in the last maxIdleMs milliseconds and
+     * nothing still queued.
+     * @return the number of sessions removed
+     */
+    public int evictIdle(long maxIdleMs) {
+        long cutoff = System.currentTimeMillis() - maxIdleMs;
+        int evicted = 0;
+        for (Map.Entry<Long, Slot> entry : sessions.entrySet()) {
+            Slot slot = entry.getValue();
+            if (slot.session.getLastActive() < cutoff && !slot.scheduled.get()
+                    && sessions.remove(entry.getKey(), slot)) {
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * Stops the evictor and the executor. Queued moves may not run.
+     */
+    public void close() {
+        if (evictor != null) {
+            evictor.shutdownNow();
+        }
+        executor.shutdown();
+    }
+}
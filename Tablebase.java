@@ -0,0 +1,279 @@
+package chess;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Exact results for endings with few pieces, read from tables made by TablebaseGenerator.
+ *
+ * Each table holds one material signature (see TablebaseLayout) in its own file, named after
+ * the signature ("KQK.tb"). File layout (little-endian):
+ *   header   magic "CHTB", version (u16), bits per entry (u8), reserved (u8),
+ *            entry count (u64), signature (8 ASCII bytes, zero padded), reserved (8)  - 32 bytes
+ *   entries  one code per position index, bit-packed at the given width, then 8 zero bytes
+ * A code is 0 for a draw, otherwise the distance to mate in plies plus 1: odd distances
+ * are wins for the side to move, even ones (0 = already mated) losses.
+ *
+ * The files are memory-mapped and a probe reads a single entry. A probe allocates nothing:
+ * tables are found by material key (see TablebaseLayout) and the squares are gathered in
+ * per-thread scratch arrays, so the search can probe at every node. Probe results are
+ * scores in Search's units, so the search can use them directly: 0 for a draw,
+ * Search.MATE - n for a mate in n plies, -(Search.MATE - n) for being mated in n plies.
+ *
+ * Castling rights and en passant are not part of the tables, so probe answers NOT_FOUND for
+ * positions that have either.
+ */
+public class Tablebase implements Closeable {
+
+    public static final int NOT_FOUND = Integer.MIN_VALUE;
+
+    static final int MAGIC = 0x42544843; // "CHTB" read as a little-endian int
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 32;
+    static final String SUFFIX = ".tb";
+
+    /**
+     * The codes of one table, wherever they are kept.
+     */
+    interface Codes {
+        int get(long index);
+    }
+
+    // A table as seen from one side: flipped when the signature's first side is Black
+    private static final class Entry {
+        final TablebaseLayout layout;
+        final Codes codes;
+        final boolean flipped;
+
+        Entry(TablebaseLayout layout, Codes codes, boolean flipped) {
+            this.layout = layout;
+            this.codes = codes;
+            this.flipped = flipped;
+        }
+    }
+
+    // Per-thread squares and symmetry images for code()
+    private static final ThreadLocal<int[][]> SCRATCH =
+            ThreadLocal.withInitial(() -> new int[2][TablebaseLayout.MAX_PIECES]);
+
+    // Sorted by the material key with White's pieces first, so both colorings of a table are
+    // found; a binary search boxes nothing, unlike a map keyed by Long
+    private long[] keys = new long[0];
+    private Entry[] entries = new Entry[0];
+    private final List<FileChannel> channels = new ArrayList<>();
+    private int maxPieces;
+
+    /**
+     * Loads every table file in a directory.
+     */
+    public static Tablebase open(Path directory) throws IOException {
+        Tablebase tablebase = new Tablebase();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : files) {
+                tablebase.load(file);
+            }
+        } catch (IOException | RuntimeException e) {
+            tablebase.close();
+            throw e;
+        }
+        return tablebase;
+    }
+
+    /**
+     * Adds the table in one file.
+     */
+    public void load(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(file + ": table too large");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (size < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+                throw new IOException(file + " is not a tablebase file");
+            }
+            if (buffer.getShort(4) != VERSION) {
+                throw new IOException(file + ": unsupported tablebase version " + buffer.getShort(4));
+            }
+            int bits = buffer.get(6);
+            long count = buffer.getLong(8);
+            byte[] name = new byte[8];
+            buffer.get(16, name);
+            int length = 0;
+            while (length < name.length && name[length] != 0) {
+                length++;
+            }
+            TablebaseLayout layout = new TablebaseLayout(new String(name, 0, length, StandardCharsets.US_ASCII));
+            if (count != layout.size || size < HEADER_BYTES + (count * bits + 7) / 8 + 8) {
+                throw new IOException(file + ": wrong size for " + layout.signature);
+            }
+            add(layout, new PackedCodes(buffer, bits));
+            channels.add(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Registers a table under both colorings of its signature.
+     */
+    void add(TablebaseLayout layout, Codes codes) {
+        put(layout.material, new Entry(layout, codes, false));
+        put(TablebaseLayout.flipMaterial(layout.material), new Entry(layout, codes, true));
+        maxPieces = Math.max(maxPieces, layout.pieceCount);
+    }
+
+    // Adds or replaces the entry for a material key, keeping the keys sorted
+    private void put(long key, Entry entry) {
+        int at = Arrays.binarySearch(keys, key);
+        if (at >= 0) {
+            entries[at] = entry;
+            return;
+        }
+        at = -at - 1;
+        int count = keys.length;
+        long[] newKeys = new long[count + 1];
+        Entry[] newEntries = new Entry[count + 1];
+        System.arraycopy(keys, 0, newKeys, 0, at);
+        System.arraycopy(entries, 0, newEntries, 0, at);
+        newKeys[at] = key;
+        newEntries[at] = entry;
+        System.arraycopy(keys, at, newKeys, at + 1, count - at);
+        System.arraycopy(entries, at, newEntries, at + 1, count - at);
+        keys = newKeys;
+        entries = newEntries;
+    }
+
+    /**
+     * Whether the table for a signature (in either order, e.g. "KQK" or "KKQ") is available.
+     */
+    public boolean contains(String signature) {
+        return Arrays.binarySearch(keys, new TablebaseLayout(signature).material) >= 0;
+    }
+
+    /**
+     * Most pieces (Kings included) of any table; boards with more are never found.
+     */
+    public int getMaxPieces() {
+        return maxPieces;
+    }
+
+    /**
+     * The exact result for the side to move (see the class comment), or NOT_FOUND.
+     */
+    public int probe(Board board) {
+        if (Long.bitCount(board.getOccupied()) > maxPieces || board.getCastlingRights() != 0
+                || board.getEnPassantSquare() >= 0) {
+            return NOT_FOUND;
+        }
+        int code = code(board);
+        return code < 0 ? NOT_FOUND : score(code);
+    }
+
+    /**
+     * The stored code for the board's position, or -1 if no table has it. Castling and
+     * en passant are ignored.
+     */
+    int code(Board board) {
+        int at = Arrays.binarySearch(keys, TablebaseLayout.material(board));
+        if (at < 0) {
+            return -1;
+        }
+        Entry entry = entries[at];
+        TablebaseLayout layout = entry.layout;
+        int[][] scratch = SCRATCH.get();
+        int[] squares = scratch[0];
+        int flip = entry.flipped ? 1 : 0;
+        long taken = 0;
+        for (int i = 0; i < layout.pieceCount; i++) {
+            Chess.Player player = TablebaseLayout.PLAYERS[layout.colors[i] ^ flip];
+            long pieces = board.getPieces(player, layout.types[i]) & ~taken;
+            int sq = Long.numberOfTrailingZeros(pieces);
+            taken |= 1L << sq;
+            squares[i] = entry.flipped ? sq ^ 56 : sq;
+        }
+        int stm = board.getSideToMove().ordinal() ^ flip;
+        return entry.codes.get(layout.index(squares, stm, scratch[1]));
+    }
+
+    /**
+     * A code turned into a score for the side to move.
+     */
+    static int score(int code) {
+        if (code == 0) {
+            return 0;
+        }
+        int plies = code - 1;
+        return (plies & 1) != 0 ? Search.MATE - plies : -(Search.MATE - plies);
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (FileChannel channel : channels) {
+            channel.close();
+        }
+        channels.clear();
+        keys = new long[0];
+        entries = new Entry[0];
+    }
+
+    /**
+     * Codes packed at a fixed bit width in a mapped file.
+     */
+    private static final class PackedCodes implements Codes {
+        private final MappedByteBuffer buffer;
+        private final int bits;
+        private final long mask;
+
+        PackedCodes(MappedByteBuffer buffer, int bits) {
+            this.buffer = buffer;
+            this.bits = bits;
+            this.mask = (1L << bits) - 1;
+        }
+
+        @Override
+        public int get(long index) {
+            long bit = index * bits;
+            // An 8-byte read always covers the entry: it is at most 8 bits wide and starts
+            // within the first byte; the file ends with 8 bytes of padding
+            long word = buffer.getLong(HEADER_BYTES + (int) (bit >>> 3));
+            return (int) ((word >>> (bit & 7)) & mask);
+        }
+    }
+
+    /**
+     * Prints the result of a position: java chess.Tablebase directory "<FEN>"
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: java chess.Tablebase <directory> <FEN>");
+            System.exit(2);
+        }
+        try (Tablebase tablebase = Tablebase.open(Paths.get(args[0]))) {
+            int score = tablebase.probe(Board.fromFen(args[1]));
+            if (score == NOT_FOUND) {
+                System.out.println("Not in the tablebase");
+            } else if (score == 0) {
+                System.out.println("Draw");
+            } else {
+                int plies = Search.MATE - Math.abs(score);
+                System.out.println((score > 0 ? "Win" : "Loss") + ", mate in " + plies + " plies");
+            }
+        }
+    }
+}
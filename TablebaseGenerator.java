@@ -0,0 +1,526 @@
+package chess;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Builds tablebases (see Tablebase) by retrograde analysis.
+ *
+ * For one signature, every position index is first examined forward on a Board: illegal
+ * positions are marked, checkmates and stalemates are final, moves that capture or promote
+ * are looked up in the smaller tables they lead to, and the remaining moves are counted.
+ * Then, for distance 0, 1, 2, ... in turn, every position decided at that distance is taken
+ * back one move (un-moves only ever stay inside the table, since un-capturing and
+ * un-promoting would change the material): a position with a move into a loss is a win one
+ * ply further away, and a position whose last undecided move turns out to lose for it is a
+ * loss. Whatever is still undecided at the end is a draw.
+ *
+ * Both passes are split over a fork-join pool in ranges of indexes, each worker with its own
+ * Board. Tables the signature depends on are generated first (or loaded, if their file is
+ * already in the directory).
+ *
+ * En passant is not part of a table's positions, so a double step is scored as if the
+ * capture it allows did not exist; this only matters with pawns on both sides.
+ */
+public class TablebaseGenerator {
+
+    private static final int LEAF_SIZE = 1 << 13;
+    private static final int WRITE_BUFFER = 1 << 20;
+
+    // Per-position state while generating
+    private static final byte INVALID = (byte) 0xFF;
+    private static final byte DRAW_ESCAPE = (byte) 0xFF;
+    private static final int MAX_CODE = 0xFE;
+
+    private static final VarHandle COUNTERS = MethodHandles.arrayElementVarHandle(byte[].class);
+
+    private final ForkJoinPool pool;
+    private final Path directory;
+    // Tables finished so far (generated or loaded), for the moves that leave the current one
+    private final Tablebase tablebase = new Tablebase();
+
+    public TablebaseGenerator(ForkJoinPool pool, Path directory) {
+        this.pool = pool;
+        this.directory = directory;
+    }
+
+    /**
+     * Makes sure the table for a signature (in any order, e.g. "KQK" or "KPK") and every table
+     * it depends on exist in the directory, generating the missing ones.
+     * @return the table's file
+     */
+    public Path generate(String signature) throws IOException {
+        String canonical = TablebaseLayout.canonical(signature);
+        Path file = directory.resolve(canonical + Tablebase.SUFFIX);
+        if (tablebase.contains(canonical)) {
+            return file;
+        }
+        if (Files.exists(file)) {
+            tablebase.load(file);
+            return file;
+        }
+
+        TablebaseLayout layout = new TablebaseLayout(canonical);
+        for (String sub : subSignatures(layout)) {
+            generate(sub);
+        }
+
+        long start = System.currentTimeMillis();
+        Table table = new Table(layout);
+        int maxCode = pool.invoke(new InitTask(table, 0, (int) layout.size));
+        for (int code = 1; code <= maxCode; code++) {
+            maxCode = Math.max(maxCode, pool.invoke(new RetroTask(table, code, 0, (int) layout.size)));
+        }
+        write(table, maxCode, file);
+        // Keep only the codes for the tables still to come; INVALID positions never get probed
+        byte[] codes = table.codes;
+        tablebase.add(layout, index -> codes[(int) index] & 0xFF);
+        System.out.printf("%s: %,d positions, longest mate %d plies, %d ms%n", canonical, layout.size,
+                maxCode - 1, System.currentTimeMillis() - start);
+        return file;
+    }
+
+    /**
+     * Signatures one capture, promotion or capturing promotion away.
+     */
+    private static String[] subSignatures(TablebaseLayout layout) {
+        String signature = layout.signature;
+        List<String> subs = new ArrayList<>();
+        for (int i = 1; i < signature.length(); i++) {
+            char c = signature.charAt(i);
+            if (c == 'K') {
+                continue;
+            }
+            subs.add(remove(signature, i));
+            if (c != 'P') {
+                continue;
+            }
+            for (char promotion : new char[] {'Q', 'R', 'B', 'N'}) {
+                String promoted = signature.substring(0, i) + promotion + signature.substring(i + 1);
+                subs.add(promoted);
+                for (int j = 1; j < signature.length(); j++) {
+                    if (signature.charAt(j) != 'K' && layout.colors[j] != layout.colors[i]) {
+                        subs.add(remove(promoted, j));
+                    }
+                }
+            }
+        }
+        return subs.toArray(new String[0]);
+    }
+
+    private static String remove(String signature, int i) {
+        return signature.substring(0, i) + signature.substring(i + 1);
+    }
+
+    /**
+     * The work arrays for one table.
+     */
+    private static final class Table {
+        final TablebaseLayout layout;
+        // 0 = undecided (a draw if it stays so), INVALID, or distance to mate + 1
+        final byte[] codes;
+        // Legal moves that stay inside the table and aren't known to lose for the mover yet
+        final byte[] counters;
+        // DRAW_ESCAPE if a capture or promotion draws, else the longest loss such moves give + 1
+        final byte[] exits;
+
+        Table(TablebaseLayout layout) {
+            this.layout = layout;
+            int size = (int) layout.size;
+            codes = new byte[size];
+            counters = new byte[size];
+            exits = new byte[size];
+        }
+    }
+
+    /**
+     * The forward pass. Returns the largest code it set.
+     */
+    private final class InitTask extends RecursiveTask<Integer> {
+        private static final long serialVersionUID = 1L;
+
+        private final Table table;
+        private final int from;
+        private final int to;
+
+        InitTask(Table table, int from, int to) {
+            this.table = table;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Integer compute() {
+            if (to - from > LEAF_SIZE) {
+                int middle = (from + to) >>> 1;
+                InitTask right = new InitTask(table, middle, to);
+                right.fork();
+                int left = new InitTask(table, from, middle).compute();
+                return Math.max(left, right.join());
+            }
+
+            TablebaseLayout layout = table.layout;
+            Board board = new Board();
+            board.clear();
+            int[] squares = new int[layout.pieceCount];
+            int[] scratch = new int[layout.pieceCount];
+            int[] placed = new int[layout.pieceCount];
+            int placedCount = 0;
+            int[] moves = new int[Move.MAX_MOVES];
+            int maxCode = 0;
+
+            for (int index = from; index < to; index++) {
+                int stm = layout.decode(index, squares);
+                // A King on a symmetry axis gives the same position a second index: only the
+                // one index computes is kept, or its predecessors would count it twice
+                if (!isPlausible(layout, squares) || layout.index(squares, stm, scratch) != index) {
+                    table.codes[index] = INVALID;
+                    continue;
+                }
+                for (int i = 0; i < placedCount; i++) {
+                    board.setPiece(placed[i] >>> 3, placed[i] & 7, null);
+                }
+                for (int i = 0; i < layout.pieceCount; i++) {
+                    Chess.Player player = TablebaseLayout.PLAYERS[layout.colors[i]];
+                    board.setPiece(squares[i] >>> 3, squares[i] & 7, Piece.of(player, layout.types[i]));
+                    placed[i] = squares[i];
+                }
+                placedCount = layout.pieceCount;
+                Chess.Player us = TablebaseLayout.PLAYERS[stm];
+                Chess.Player them = TablebaseLayout.PLAYERS[stm ^ 1];
+                board.setSideToMove(us);
+                if (board.isInCheck(them)) {
+                    table.codes[index] = INVALID;
+                    continue;
+                }
+
+                int count = board.generateLegalMoves(moves);
+                if (count == 0) {
+                    // Mated (lost, distance 0) or stalemated (a draw)
+                    if (board.isInCheck(us)) {
+                        table.codes[index] = 1;
+                        maxCode = Math.max(maxCode, 1);
+                    }
+                    continue;
+                }
+
+                int inside = 0;
+                int bestWin = Integer.MAX_VALUE;
+                int longestLoss = 0;
+                boolean drawEscape = false;
+                for (int i = 0; i < count; i++) {
+                    int move = moves[i];
+                    if (!Move.isCapture(move) && Move.promotion(move) == 0) {
+                        inside++;
+                        continue;
+                    }
+                    board.makeMove(move);
+                    int code = tablebase.code(board);
+                    board.unmakeMove();
+                    if (code < 0) {
+                        throw new IllegalStateException("No table for " + TablebaseLayout.signature(board));
+                    }
+                    if (code == 0) {
+                        drawEscape = true;
+                    } else if (((code - 1) & 1) == 0) {
+                        bestWin = Math.min(bestWin, code + 1); // The opponent is lost
+                    } else {
+                        longestLoss = Math.max(longestLoss, code + 1);
+                    }
+                }
+
+                table.counters[index] = (byte) inside;
+                table.exits[index] = drawEscape ? DRAW_ESCAPE : (byte) longestLoss;
+                int code = 0;
+                if (bestWin != Integer.MAX_VALUE) {
+                    code = bestWin; // May still be beaten by a quicker mate inside the table
+                } else if (inside == 0 && !drawEscape) {
+                    code = longestLoss;
+                }
+                if (code > MAX_CODE) {
+                    throw new IllegalStateException(layout.signature + ": mate too long to store");
+                }
+                table.codes[index] = (byte) code;
+                maxCode = Math.max(maxCode, code);
+            }
+            return maxCode;
+        }
+    }
+
+    // Squares all different and no pawn on the first or last row
+    private static boolean isPlausible(TablebaseLayout layout, int[] squares) {
+        long seen = 0;
+        for (int i = 0; i < layout.pieceCount; i++) {
+            long bit = 1L << squares[i];
+            if ((seen & bit) != 0) {
+                return false;
+            }
+            seen |= bit;
+            if (layout.types[i] == Piece.PAWN && (squares[i] < 8 || squares[i] >= 56)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * One backward step: takes back a move from every position whose code is the given one.
+     * Returns the largest code it set.
+     */
+    private static final class RetroTask extends RecursiveTask<Integer> {
+        private static final long serialVersionUID = 1L;
+
+        private final Table table;
+        private final int code;
+        private final int from;
+        private final int to;
+
+        RetroTask(Table table, int code, int from, int to) {
+            this.table = table;
+            this.code = code;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Integer compute() {
+            if (to - from > LEAF_SIZE) {
+                int middle = (from + to) >>> 1;
+                RetroTask right = new RetroTask(table, code, middle, to);
+                right.fork();
+                int left = new RetroTask(table, code, from, middle).compute();
+                return Math.max(left, right.join());
+            }
+
+            TablebaseLayout layout = table.layout;
+            int n = layout.pieceCount;
+            int[] squares = new int[n];
+            int[][] images = new int[layout.symmetries][n];
+            int[] scratch = new int[n];
+            byte target = (byte) code;
+            // Distance code - 1 is odd for a win, even for a loss
+            boolean lost = ((code - 1) & 1) == 0;
+            int maxCode = 0;
+
+            for (int index = from; index < to; index++) {
+                if (table.codes[index] != target) {
+                    continue;
+                }
+                int stm = layout.decode(index, squares);
+                int mover = stm ^ 1;
+
+                // Take the move back in every distinct mirror image, so each predecessor
+                // (in its own reduced form) is reached once for each of its moves to here
+                int imageCount = 0;
+                for (int t = 0; t < layout.symmetries; t++) {
+                    int[] image = images[imageCount];
+                    for (int i = 0; i < n; i++) {
+                        image[i] = TablebaseLayout.transform(squares[i], t);
+                    }
+                    if (isNew(images, imageCount, image)) {
+                        imageCount++;
+                    }
+                }
+
+                for (int m = 0; m < imageCount; m++) {
+                    int[] image = images[m];
+                    long occupied = 0;
+                    for (int i = 0; i < n; i++) {
+                        occupied |= 1L << image[i];
+                    }
+                    for (int i = 0; i < n; i++) {
+                        if (layout.colors[i] != mover) {
+                            continue;
+                        }
+                        int sq = image[i];
+                        long origins = origins(layout.types[i], mover, sq, occupied);
+                        while (origins != 0) {
+                            int origin = Long.numberOfTrailingZeros(origins);
+                            origins &= origins - 1;
+                            image[i] = origin;
+                            long raw = layout.rawIndex(image, mover);
+                            if (raw >= 0 && layout.index(image, mover, scratch) == raw) {
+                                maxCode = Math.max(maxCode, lost ? win((int) raw) : loss((int) raw));
+                            }
+                        }
+                        image[i] = sq;
+                    }
+                }
+            }
+            return maxCode;
+        }
+
+        // The predecessor has a move into a lost position: it wins one ply further away
+        private int win(int index) {
+            byte current = table.codes[index];
+            int next = code + 1;
+            if (current == INVALID) {
+                return 0;
+            }
+            int value = current & 0xFF;
+            if (value == 0 || (((value - 1) & 1) != 0 && value > next)) {
+                table.codes[index] = (byte) next;
+                return next;
+            }
+            return 0;
+        }
+
+        // One more of the predecessor's moves leads to a won position for the opponent
+        private int loss(int index) {
+            if (table.codes[index] == INVALID) {
+                return 0;
+            }
+            // A compare-and-set loop rather than getAndAdd: on JDK 17 (seen on 17.0.9) C2 gets
+            // the byte form's return value wrong, while the stored value is right. This loop
+            // prints millions of values outside the byte range (-241, -240, ...) once C2 has
+            // compiled it, and nothing with -Xint or -XX:TieredStopAtLevel=1:
+            //   VarHandle h = MethodHandles.arrayElementVarHandle(byte[].class);
+            //   byte[] a = new byte[1024];
+            //   for (int round = 0; round < 20000; round++)
+            //     for (int i = 0; i < a.length; i++) {
+            //       a[i] = (byte) (i % 100 + 1);
+            //       int left = (byte) h.getAndAdd(a, i, (byte) -1);
+            //       if (left != i % 100 + 1) System.out.println(left);
+            //     }
+            // With getAndAdd the generated tables come out wrong even on one thread.
+            int left;
+            do {
+                left = (byte) COUNTERS.getVolatile(table.counters, index);
+            } while (!COUNTERS.compareAndSet(table.counters, index, (byte) left, (byte) (left - 1)));
+            if (left != 1 || table.codes[index] != 0 || table.exits[index] == DRAW_ESCAPE) {
+                return 0;
+            }
+            int next = Math.max(code + 1, table.exits[index] & 0xFF);
+            if (next > MAX_CODE) {
+                throw new IllegalStateException(table.layout.signature + ": mate too long to store");
+            }
+            table.codes[index] = (byte) next;
+            return next;
+        }
+    }
+
+    private static boolean isNew(int[][] images, int count, int[] image) {
+        for (int i = 0; i < count; i++) {
+            if (Arrays.equals(images[i], image)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Empty squares a piece on sq could have come from with a move that captures nothing
+     * and doesn't promote.
+     */
+    private static long origins(int type, int color, int sq, long occupied) {
+        long empty = ~occupied;
+        switch (type) {
+            case Piece.KING: return Attacks.KING[sq] & empty;
+            case Piece.KNIGHT: return Attacks.KNIGHT[sq] & empty;
+            case Piece.BISHOP: return Attacks.bishop(sq, occupied) & empty;
+            case Piece.ROOK: return Attacks.rook(sq, occupied) & empty;
+            case Piece.QUEEN: return Attacks.queen(sq, occupied) & empty;
+            default:
+                break;
+        }
+        // Pawns: one step back, or two from the double step row; never from the first row
+        int back = color == 0 ? 8 : -8;
+        int row = sq >>> 3;
+        long origins = 0;
+        int one = sq + back;
+        if (one >= 8 && one < 56 && (empty & (1L << one)) != 0) {
+            origins |= 1L << one;
+            int two = one + back;
+            if (row == (color == 0 ? 4 : 3) && (empty & (1L << two)) != 0) {
+                origins |= 1L << two;
+            }
+        }
+        return origins;
+    }
+
+    /**
+     * Writes a table file: header, then the codes packed at the narrowest width that fits.
+     */
+    private static void write(Table table, int maxCode, Path file) throws IOException {
+        TablebaseLayout layout = table.layout;
+        int bits = Math.max(1, 32 - Integer.numberOfLeadingZeros(maxCode));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER).order(ByteOrder.LITTLE_ENDIAN);
+            byte[] name = new byte[8];
+            byte[] ascii = layout.signature.getBytes(StandardCharsets.US_ASCII);
+            System.arraycopy(ascii, 0, name, 0, ascii.length);
+            buffer.putInt(Tablebase.MAGIC).putShort((short) Tablebase.VERSION).put((byte) bits).put((byte) 0)
+                    .putLong(layout.size).put(name).putLong(0);
+
+            long word = 0;
+            int filled = 0;
+            for (int index = 0; index < table.codes.length; index++) {
+                byte code = table.codes[index];
+                long value = code == INVALID ? 0 : code & 0xFF;
+                word |= value << filled;
+                filled += bits;
+                if (filled >= 64) {
+                    put(channel, buffer, word);
+                    filled -= 64;
+                    word = filled > 0 ? value >>> (bits - filled) : 0;
+                }
+            }
+            // The last partial word, written whole, doubles as the padding (plus one more word)
+            put(channel, buffer, word);
+            put(channel, buffer, 0);
+            EntrySorter.drain(channel, buffer);
+        }
+    }
+
+    private static void put(FileChannel channel, ByteBuffer buffer, long word) throws IOException {
+        if (buffer.remaining() < 8) {
+            EntrySorter.drain(channel, buffer);
+        }
+        buffer.putLong(word);
+    }
+
+    /**
+     * Generates tables: java chess.TablebaseGenerator directory KQK KRK KPK ... [-threads n]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: java chess.TablebaseGenerator <directory> <signature>... [-threads n]");
+            System.exit(2);
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<String> signatures = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("-threads") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else {
+                signatures.add(args[i]);
+            }
+        }
+        Path directory = Paths.get(args[0]);
+        Files.createDirectories(directory);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            TablebaseGenerator generator = new TablebaseGenerator(pool, directory);
+            for (String signature : signatures) {
+                generator.generate(signature);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package chess;
+
+import java.util.Arrays;
+
+/**
+ * How the positions of one material signature (e.g. "KQK", "KRKP") are numbered in a tablebase.
+ *
+ * A signature lists the first side's pieces, King first, then the other side's, each side's
+ * extra pieces in the order Q R B N P. Tables are generated with the first side as White;
+ * a position where Black has the first side's material is looked up with the board turned
+ * around (see Tablebase). The pieces are numbered in signature order: 0 is the white King,
+ * then White's other pieces, then the black King and Black's other pieces.
+ *
+ * Index = ((slot * 64 + square of piece 1) * 64 + square of piece 2 ...) * 2 + side to move,
+ * where slot is where the white King stands after symmetry reduction. Without pawns the
+ * board has eight symmetries and the King is brought into the a1-d1-d4 triangle (10 slots);
+ * with pawns only the left-right mirror is allowed and the King goes to files a-d (32 slots).
+ * A position whose King lands on a symmetry axis has more than one image in the reduced
+ * area; the one with the smallest index stands for all of them.
+ *
+ * Probes find their table by material key rather than by signature string: the count of
+ * each non-King piece type per side, packed four bits apiece, White's in the low bits.
+ */
+final class TablebaseLayout {
+
+    static final int MAX_PIECES = 4;
+    static final String PIECE_ORDER = "QRBNP";
+    static final Chess.Player[] PLAYERS = Chess.Player.values();
+
+    private static final int MATERIAL_BITS = 4;
+    // Bits of one side's material key: Pawn to Queen, four bits each
+    private static final int SIDE_BITS = MATERIAL_BITS * (Piece.QUEEN + 1);
+
+    private static final int[] PIECE_VALUE = { 1, 3, 3, 5, 9, 0 }; // indexed by Piece type
+
+    // Triangle slot (or -1) for each square, for pawnless tables
+    private static final int[] TRIANGLE = new int[64];
+    static {
+        int slot = 0;
+        Arrays.fill(TRIANGLE, -1);
+        for (int rank = 0; rank < 4; rank++) {
+            for (int file = rank; file < 4; file++) {
+                TRIANGLE[(7 - rank) * 8 + file] = slot++;
+            }
+        }
+    }
+
+    final String signature;
+    final int pieceCount;
+    // Per piece, in index order: color (0 white, 1 black) and Piece type
+    final int[] colors;
+    final int[] types;
+    final boolean hasPawns;
+    final int symmetries;
+    final long size;
+    final long material;
+
+    // Square of the white King for each slot, to decode indexes
+    private final int[] slotSquares;
+
+    TablebaseLayout(String signature) {
+        int split = signature.indexOf('K', 1);
+        if (!signature.startsWith("K") || split < 0) {
+            throw new IllegalArgumentException("Bad signature " + signature + ": need two Kings");
+        }
+        this.signature = signature;
+        pieceCount = signature.length();
+        if (pieceCount > MAX_PIECES) {
+            throw new IllegalArgumentException("Tablebases go up to " + MAX_PIECES + " pieces: " + signature);
+        }
+        colors = new int[pieceCount];
+        types = new int[pieceCount];
+        boolean pawns = false;
+        long key = 0;
+        for (int i = 0; i < pieceCount; i++) {
+            char c = signature.charAt(i);
+            colors[i] = i < split ? 0 : 1;
+            if (c == 'K') {
+                if (i != 0 && i != split) {
+                    throw new IllegalArgumentException("Bad signature " + signature + ": too many Kings");
+                }
+                types[i] = Piece.KING;
+                continue;
+            }
+            int order = PIECE_ORDER.indexOf(c);
+            if (order < 0) {
+                throw new IllegalArgumentException("Bad signature " + signature + ": unknown piece " + c);
+            }
+            types[i] = Piece.QUEEN - order;
+            pawns |= types[i] == Piece.PAWN;
+            key += 1L << (colors[i] * SIDE_BITS + types[i] * MATERIAL_BITS);
+        }
+        hasPawns = pawns;
+        material = key;
+        symmetries = pawns ? 2 : 8;
+
+        int slots = pawns ? 32 : 10;
+        slotSquares = new int[slots];
+        for (int sq = 0; sq < 64; sq++) {
+            int slot = kingSlot(sq);
+            if (slot >= 0) {
+                slotSquares[slot] = sq;
+            }
+        }
+        long positions = slots;
+        for (int i = 1; i < pieceCount; i++) {
+            positions *= 64;
+        }
+        size = positions * 2;
+    }
+
+    /**
+     * The signature in the form tables are stored under: the side with more material first
+     * (Q=9, R=5, B=N=3, P=1), ties broken alphabetically, each side sorted Q R B N P.
+     */
+    static String canonical(String signature) {
+        int split = signature.indexOf('K', 1);
+        if (!signature.startsWith("K") || split < 0) {
+            throw new IllegalArgumentException("Bad signature " + signature + ": need two Kings");
+        }
+        String first = "K" + sortPieces(signature.substring(1, split));
+        String second = "K" + sortPieces(signature.substring(split + 1));
+        int difference = value(first) - value(second);
+        if (difference < 0 || (difference == 0 && first.compareTo(second) > 0)) {
+            return second + first;
+        }
+        return first + second;
+    }
+
+    private static String sortPieces(String pieces) {
+        StringBuilder sb = new StringBuilder(pieces.length());
+        for (int i = 0; i < PIECE_ORDER.length(); i++) {
+            char c = PIECE_ORDER.charAt(i);
+            for (int j = 0; j < pieces.length(); j++) {
+                if (pieces.charAt(j) == c) {
+                    sb.append(c);
+                }
+            }
+        }
+        if (sb.length() != pieces.length()) {
+            throw new IllegalArgumentException("Bad pieces in signature: " + pieces);
+        }
+        return sb.toString();
+    }
+
+    private static int value(String side) {
+        int value = 0;
+        for (int i = 1; i < side.length(); i++) {
+            value += PIECE_VALUE[Piece.QUEEN - PIECE_ORDER.indexOf(side.charAt(i))];
+        }
+        return value;
+    }
+
+    /**
+     * The material key of a board (see the class comment); allocates nothing, for probes.
+     */
+    static long material(Board board) {
+        long key = 0;
+        for (int color = 0; color < 2; color++) {
+            for (int type = Piece.PAWN; type <= Piece.QUEEN; type++) {
+                long count = Long.bitCount(board.getPieces(PLAYERS[color], type));
+                key |= count << (color * SIDE_BITS + type * MATERIAL_BITS);
+            }
+        }
+        return key;
+    }
+
+    /**
+     * The material key with the two sides swapped.
+     */
+    static long flipMaterial(long key) {
+        return (key >>> SIDE_BITS) | ((key & ((1L << SIDE_BITS) - 1)) << SIDE_BITS);
+    }
+
+    /**
+     * The signature of the material on a board, White's side first (not canonical).
+     */
+    static String signature(Board board) {
+        StringBuilder sb = new StringBuilder(8);
+        for (Chess.Player player : PLAYERS) {
+            sb.append('K');
+            for (int type = Piece.QUEEN; type >= Piece.PAWN; type--) {
+                for (int n = Long.bitCount(board.getPieces(player, type)); n > 0; n--) {
+                    sb.append(PIECE_ORDER.charAt(Piece.QUEEN - type));
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    // Slot of the white King on sq, or -1 if the reduction never puts it there
+    int kingSlot(int sq) {
+        if (hasPawns) {
+            return (sq & 7) < 4 ? (sq >>> 3) * 4 + (sq & 7) : -1;
+        }
+        return TRIANGLE[sq];
+    }
+
+    /**
+     * Applies symmetry t to a square. Bit 0 mirrors the files, bit 1 the rows and
+     * bit 2 swaps files and rows (a reflection in the a8-h1 diagonal).
+     */
+    static int transform(int sq, int t) {
+        int row = sq >>> 3;
+        int col = sq & 7;
+        if ((t & 1) != 0) {
+            col = 7 - col;
+        }
+        if ((t & 2) != 0) {
+            row = 7 - row;
+        }
+        if ((t & 4) != 0) {
+            int swap = row;
+            row = col;
+            col = swap;
+        }
+        return row * 8 + col;
+    }
+
+    /**
+     * Index of the position exactly as given, or -1 if the white King is outside the
+     * reduced area.
+     */
+    long rawIndex(int[] squares, int stm) {
+        int slot = kingSlot(squares[0]);
+        if (slot < 0) {
+            return -1;
+        }
+        long index = slot;
+        for (int i = 1; i < pieceCount; i++) {
+            index = index * 64 + squares[i];
+        }
+        return index * 2 + stm;
+    }
+
+    /**
+     * Index of the position after symmetry reduction. scratch needs pieceCount entries.
+     */
+    long index(int[] squares, int stm, int[] scratch) {
+        long best = Long.MAX_VALUE;
+        for (int t = 0; t < symmetries; t++) {
+            if (kingSlot(transform(squares[0], t)) < 0) {
+                continue;
+            }
+            for (int i = 0; i < pieceCount; i++) {
+                scratch[i] = transform(squares[i], t);
+            }
+            best = Math.min(best, rawIndex(scratch, stm));
+        }
+        return best;
+    }
+
+    /**
+     * Fills squares with the position at index (in the reduced area) and returns the side to move.
+     */
+    int decode(long index, int[] squares) {
+        int stm = (int) (index & 1);
+        index >>>= 1;
+        for (int i = pieceCount - 1; i > 0; i--) {
+            squares[i] = (int) (index & 63);
+            index >>>= 6;
+        }
+        squares[0] = slotSquares[(int) index];
+        return stm;
+    }
+}
@@ -0,0 +1,312 @@
+package chess;
+
+import java.util.Random;
+
+/**
+ * Material and piece-square tables, blended between a middlegame and an endgame set by how
+ * much material is left ("tapered" evaluation).
+ *
+ * Each piece is worth its material plus a bonus for its square, once with the middlegame
+ * tables and once with the endgame ones. The phase runs from 24 (all minor pieces, Rooks and
+ * Queens on the board: Knight and Bishop 1, Rook 2, Queen 4) down to 0, and the score is
+ * (middlegame * phase + endgame * (24 - phase)) / 24. So the King leaves its shelter for the
+ * centre, and passed pawns gain value, as the pieces come off.
+ *
+ * While attached to a board the middlegame and endgame sums and the phase are running totals,
+ * kept up to date through the board's piece changes (see Board.PieceListener) the way
+ * NnueEvaluator keeps its accumulators, so evaluate only blends them. A board it isn't
+ * attached to is evaluated from scratch. Like NnueEvaluator, one attached evaluator belongs
+ * to one board and one thread at a time; copy gives another thread its own totals.
+ */
+public class TaperedEvaluator implements Evaluator, Board.PieceListener {
+
+    static final int[] MG_VALUES = { 100, 320, 330, 500, 900, 0 };
+    static final int[] EG_VALUES = { 120, 300, 320, 530, 950, 0 };
+    static final int[] PHASE_WEIGHTS = { 0, 1, 1, 2, 4, 0 };
+    static final int MAX_PHASE = 24;
+
+    // Square tables from White's side, rank 8 first (the Board's square order); Black reads
+    // them upside down. The middlegame ones are also used in the endgame except for the
+    // Pawn and the King.
+    private static final int[] PAWN = {
+          0,   0,   0,   0,   0,   0,   0,   0,
+         50,  50,  50,  50,  50,  50,  50,  50,
+         10,  10,  20,  30,  30,  20,  10,  10,
+          5,   5,  10,  25,  25,  10,   5,   5,
+          0,   0,   0,  20,  20,   0,   0,   0,
+          5,  -5, -10,   0,   0, -10,  -5,   5,
+          5,  10,  10, -20, -20,  10,  10,   5,
+          0,   0,   0,   0,   0,   0,   0,   0,
+    };
+    private static final int[] PAWN_ENDGAME = {
+          0,   0,   0,   0,   0,   0,   0,   0,
+         80,  80,  80,  80,  80,  80,  80,  80,
+         50,  50,  50,  50,  50,  50,  50,  50,
+         30,  30,  30,  30,  30,  30,  30,  30,
+         15,  15,  15,  15,  15,  15,  15,  15,
+          5,   5,   5,   5,   5,   5,   5,   5,
+          0,   0,   0,   0,   0,   0,   0,   0,
+          0,   0,   0,   0,   0,   0,   0,   0,
+    };
+    private static final int[] KNIGHT = {
+        -50, -40, -30, -30, -30, -30, -40, -50,
+        -40, -20,   0,   0,   0,   0, -20, -40,
+        -30,   0,  10,  15,  15,  10,   0, -30,
+        -30,   5,  15,  20,  20,  15,   5, -30,
+        -30,   0,  15,  20,  20,  15,   0, -30,
+        -30,   5,  10,  15,  15,  10,   5, -30,
+        -40, -20,   0,   5,   5,   0, -20, -40,
+        -50, -40, -30, -30, -30, -30, -40, -50,
+    };
+    private static final int[] BISHOP = {
+        -20, -10, -10, -10, -10, -10, -10, -20,
+        -10,   0,   0,   0,   0,   0,   0, -10,
+        -10,   0,   5,  10,  10,   5,   0, -10,
+        -10,   5,   5,  10,  10,   5,   5, -10,
+        -10,   0,  10,  10,  10,  10,   0, -10,
+        -10,  10,  10,  10,  10,  10,  10, -10,
+        -10,   5,   0,   0,   0,   0,   5, -10,
+        -20, -10, -10, -10, -10, -10, -10, -20,
+    };
+    private static final int[] ROOK = {
+          0,   0,   0,   0,   0,   0,   0,   0,
+          5,  10,  10,  10,  10,  10,  10,   5,
+         -5,   0,   0,   0,   0,   0,   0,  -5,
+         -5,   0,   0,   0,   0,   0,   0,  -5,
+         -5,   0,   0,   0,   0,   0,   0,  -5,
+         -5,   0,   0,   0,   0,   0,   0,  -5,
+         -5,   0,   0,   0,   0,   0,   0,  -5,
+          0,   0,   0,   5,   5,   0,   0,   0,
+    };
+    private static final int[] QUEEN = {
+        -20, -10, -10,  -5,  -5, -10, -10, -20,
+        -10,   0,   0,   0,   0,   0,   0, -10,
+        -10,   0,   5,   5,   5,   5,   0, -10,
+         -5,   0,   5,   5,   5,   5,   0,  -5,
+          0,   0,   5,   5,   5,   5,   0,  -5,
+        -10,   5,   5,   5,   5,   5,   0, -10,
+        -10,   0,   5,   0,   0,   0,   0, -10,
+        -20, -10, -10,  -5,  -5, -10, -10, -20,
+    };
+    private static final int[] KING = {
+        -30, -40, -40, -50, -50, -40, -40, -30,
+        -30, -40, -40, -50, -50, -40, -40, -30,
+        -30, -40, -40, -50, -50, -40, -40, -30,
+        -30, -40, -40, -50, -50, -40, -40, -30,
+        -20, -30, -30, -40, -40, -30, -30, -20,
+        -10, -20, -20, -20, -20, -20, -20, -10,
+         20,  20,   0,   0,   0,   0,  20,  20,
+         20,  30,  10,   0,   0,  10,  30,  20,
+    };
+    private static final int[] KING_ENDGAME = {
+        -50, -40, -30, -20, -20, -30, -40, -50,
+        -30, -20, -10,   0,   0, -10, -20, -30,
+        -30, -10,  20,  30,  30,  20, -10, -30,
+        -30, -10,  30,  40,  40,  30, -10, -30,
+        -30, -10,  30,  40,  40,  30, -10, -30,
+        -30, -10,  20,  30,  30,  20, -10, -30,
+        -30, -30,   0,   0,   0,   0, -30, -30,
+        -50, -30, -30, -30, -30, -30, -30, -50,
+    };
+
+    // [color * 6 + type][square]: material plus square bonus, negated for Black
+    private static final int[][] MG = new int[12][64];
+    private static final int[][] EG = new int[12][64];
+    static {
+        int[][] mg = { PAWN, KNIGHT, BISHOP, ROOK, QUEEN, KING };
+        int[][] eg = { PAWN_ENDGAME, KNIGHT, BISHOP, ROOK, QUEEN, KING_ENDGAME };
+        for (int type = Piece.PAWN; type <= Piece.KING; type++) {
+            for (int sq = 0; sq < 64; sq++) {
+                MG[type][sq] = MG_VALUES[type] + mg[type][sq];
+                EG[type][sq] = EG_VALUES[type] + eg[type][sq];
+                MG[6 + type][sq] = -(MG_VALUES[type] + mg[type][sq ^ 56]);
+                EG[6 + type][sq] = -(EG_VALUES[type] + eg[type][sq ^ 56]);
+            }
+        }
+    }
+
+    // Running totals for the attached board, White's point of view
+    private int mg;
+    private int eg;
+    private int phase;
+    private Board board;
+
+    /**
+     * Starts following a board: the totals are computed from scratch once, then updated with
+     * every change. Replaces any listener the board had.
+     */
+    @Override
+    public void attach(Board board) {
+        if (this.board != null) {
+            detach(this.board);
+        }
+        this.board = board;
+        board.setPieceListener(this);
+        refresh();
+    }
+
+    @Override
+    public void detach(Board board) {
+        if (this.board == board) {
+            board.setPieceListener(null);
+            this.board = null;
+        }
+    }
+
+    @Override
+    public Evaluator copy() {
+        return new TaperedEvaluator();
+    }
+
+    @Override
+    public int evaluate(Board board) {
+        if (board != this.board) {
+            return evaluateFromScratch(board);
+        }
+        return blend(board, mg, eg, phase);
+    }
+
+    /**
+     * The same score as evaluate, summed over every piece on the board.
+     */
+    static int evaluateFromScratch(Board board) {
+        int mg = 0;
+        int eg = 0;
+        int phase = 0;
+        for (Chess.Player player : Chess.Player.values()) {
+            for (int type = Piece.PAWN; type <= Piece.KING; type++) {
+                int piece = player.ordinal() * 6 + type;
+                long bits = board.getPieces(player, type);
+                phase += PHASE_WEIGHTS[type] * Long.bitCount(bits);
+                while (bits != 0) {
+                    int sq = Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                    mg += MG[piece][sq];
+                    eg += EG[piece][sq];
+                }
+            }
+        }
+        return blend(board, mg, eg, phase);
+    }
+
+    private static int blend(Board board, int mg, int eg, int phase) {
+        // Promotions can take the phase past the start position's
+        phase = Math.min(phase, MAX_PHASE);
+        int score = (mg * phase + eg * (MAX_PHASE - phase)) / MAX_PHASE;
+        return board.getSideToMove() == Chess.Player.white ? score : -score;
+    }
+
+    /**
+     * Recomputes the totals from the pieces on the attached board.
+     */
+    public void refresh() {
+        mg = 0;
+        eg = 0;
+        phase = 0;
+        for (Chess.Player player : Chess.Player.values()) {
+            for (int type = Piece.PAWN; type <= Piece.KING; type++) {
+                long bits = board.getPieces(player, type);
+                while (bits != 0) {
+                    pieceAdded(player.ordinal() * 6 + type, Long.numberOfTrailingZeros(bits));
+                    bits &= bits - 1;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void pieceAdded(int piece, int sq) {
+        mg += MG[piece][sq];
+        eg += EG[piece][sq];
+        phase += PHASE_WEIGHTS[piece % 6];
+    }
+
+    @Override
+    public void pieceRemoved(int piece, int sq) {
+        mg -= MG[piece][sq];
+        eg -= EG[piece][sq];
+        phase -= PHASE_WEIGHTS[piece % 6];
+    }
+
+    /**
+     * Checks the running totals and the tables: plays seeded random games, and after every
+     * move made and taken back in them compares evaluate with evaluateFromScratch, and the
+     * score with that of the colour-mirrored position. Throws if any differs. Runs with the
+     * tests (see pom.xml); pass the number of games to play more.
+     */
+    public static void main(String[] args) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        TaperedEvaluator evaluator = new TaperedEvaluator();
+        Random random = new Random(1);
+        int[] moves = new int[Move.MAX_MOVES];
+        long positions = 0;
+        long start = System.nanoTime();
+        for (int game = 0; game < games; game++) {
+            Board board = Board.fromFen(Board.START_FEN);
+            evaluator.attach(board);
+            for (int ply = 0; ply < 200; ply++) {
+                int count = board.generateLegalMoves(moves);
+                if (count == 0) {
+                    break;
+                }
+                for (int i = 0; i < count; i++) {
+                    board.makeMove(moves[i]);
+                    evaluator.check(board);
+                    board.unmakeMove();
+                    positions++;
+                }
+                evaluator.check(board);
+                board.makeMove(moves[random.nextInt(count)]);
+            }
+            evaluator.detach(board);
+        }
+        System.out.printf("%d games, %,d positions: running totals match, scores are colour-symmetric, %d ms%n",
+                games, positions, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private void check(Board board) {
+        int score = evaluate(board);
+        if (score != evaluateFromScratch(board)) {
+            throw new IllegalStateException("Running totals differ from a recomputation at " + board.toFen());
+        }
+        Board mirrored = Board.fromFen(mirror(board.toFen()));
+        if (score != evaluateFromScratch(mirrored)) {
+            throw new IllegalStateException("Score changes with the colours mirrored at " + board.toFen());
+        }
+    }
+
+    // The FEN with the board turned upside down and the colours swapped
+    private static String mirror(String fen) {
+        String[] fields = fen.split(" ");
+        String[] ranks = fields[0].split("/");
+        StringBuilder sb = new StringBuilder(fen.length());
+        for (int i = ranks.length - 1; i >= 0; i--) {
+            sb.append(swapCase(ranks[i])).append(i > 0 ? "/" : " ");
+        }
+        sb.append(fields[1].equals("w") ? "b " : "w ");
+        String castling = swapCase(fields[2]);
+        int length = sb.length();
+        for (char c : "KQkq".toCharArray()) {
+            if (castling.indexOf(c) >= 0) {
+                sb.append(c);
+            }
+        }
+        if (sb.length() == length) {
+            sb.append('-');
+        }
+        String ep = fields[3];
+        sb.append(' ').append(ep.equals("-") ? ep : ep.charAt(0) + String.valueOf((char) ('1' + '8' - ep.charAt(1))));
+        for (int i = 4; i < fields.length; i++) {
+            sb.append(' ').append(fields[i]);
+        }
+        return sb.toString();
+    }
+
+    private static String swapCase(String text) {
+        StringBuilder sb = new StringBuilder(text.length());
+        for (char c : text.toCharArray()) {
+            sb.append(Character.isUpperCase(c) ? Character.toLowerCase(c) : Character.toUpperCase(c));
+        }
+        return sb.toString();
+    }
+}
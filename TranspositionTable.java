@@ -0,0 +1,123 @@
+package chess;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size hash table of search results, keyed by the Board's Zobrist key.
+ *
+ * Each entry is two longs in primitive arrays: the packed data, and the position key XORed with
+ * that data. A reader accepts an entry only if key ^ data gives back its own position's key, so
+ * a torn entry (two threads writing the same slot at once) simply reads as a miss. That lets
+ * several search threads share one table without locks.
+ *
+ * Data layout:
+ *   bits  0-21  best move (packed int from the move generator, 0 if none)
+ *   bits 22-37  score (signed 16-bit)
+ *   bits 38-45  depth
+ *   bits 46-47  bound type (EXACT, LOWER, UPPER)
+ *   bits 48-55  generation (which search stored it), so old entries can be replaced
+ */
+public class TranspositionTable {
+
+    public static final int EXACT = 1;
+    public static final int LOWER = 2; // score >= stored score (fail high)
+    public static final int UPPER = 3; // score <= stored score (fail low)
+
+    // Two longs per entry
+    public static final int BYTES_PER_ENTRY = 16;
+
+    private final long[] keys;
+    private final long[] data;
+    private final int mask;
+    private int generation;
+
+    /**
+     * Creates a table of at most the given size. The entry count is rounded down to a power of two.
+     */
+    public TranspositionTable(int megabytes) {
+        long budget = Math.max(1L, (long) megabytes) * 1024 * 1024 / BYTES_PER_ENTRY;
+        int entries = Integer.highestOneBit((int) Math.min(budget, 1 << 30));
+        keys = new long[entries];
+        data = new long[entries];
+        mask = entries - 1;
+    }
+
+    public int capacity() {
+        return keys.length;
+    }
+
+    public long sizeInBytes() {
+        return (long) keys.length * BYTES_PER_ENTRY;
+    }
+
+    /**
+     * Called at the start of each search; entries from earlier searches become replaceable.
+     */
+    public void newSearch() {
+        generation = (generation + 1) & 0xFF;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0L);
+        Arrays.fill(data, 0L);
+        generation = 0;
+    }
+
+    /**
+     * Returns the packed data stored for the key, or 0 if there is none.
+     * Use the static helpers below to unpack it.
+     */
+    public long probe(long key) {
+        int index = (int) key & mask;
+        long entry = data[index];
+        if ((keys[index] ^ entry) == key && entry != 0) {
+            return entry;
+        }
+        return 0L;
+    }
+
+    /**
+     * Stores a result. An entry for a different position is only overwritten if it is from an
+     * older search or was searched less deeply, so expensive deep results survive.
+     */
+    public void store(long key, int move, int score, int depth, int bound) {
+        int index = (int) key & mask;
+        long oldData = data[index];
+        long oldKey = keys[index] ^ oldData;
+
+        if (oldData != 0 && oldKey != key && generation(oldData) == generation && depth(oldData) > depth) {
+            return; // Keep the deeper entry
+        }
+        if (move == 0 && oldKey == key) {
+            move = move(oldData); // Don't lose a known best move
+        }
+
+        long packed = (move & 0x3FFFFFL)
+                | ((score & 0xFFFFL) << 22)
+                | ((long) (depth & 0xFF) << 38)
+                | ((long) bound << 46)
+                | ((long) generation << 48);
+        data[index] = packed;
+        keys[index] = key ^ packed;
+    }
+
+    public static int move(long entry) {
+        return (int) (entry & 0x3FFFFF);
+    }
+
+    public static int score(long entry) {
+        return (short) (entry >>> 22);
+    }
+
+    public static int depth(long entry) {
+        return (int) (entry >>> 38) & 0xFF;
+    }
+
+    public static int bound(long entry) {
+        return (int) (entry >>> 46) & 3;
+    }
+
+    private static int generation(long entry) {
+        return (int) (entry >>> 48) & 0xFF;
+    }
+}
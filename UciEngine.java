@@ -0,0 +1,391 @@
+package chess;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * The engine side of the UCI protocol, so that chess GUIs and tournament managers can run
+ * the engine over its standard input and output.
+ *
+ * Commands understood (anything else is ignored, as the protocol asks):
+ *   uci, isready, ucinewgame, quit
+ *   setoption name Hash value <megabytes>, setoption name Threads value <n>
+ *   position startpos|fen <FEN> [moves <move> ...]
+ *   go [wtime <ms>] [btime <ms>] [winc <ms>] [binc <ms>] [movestogo <n>] [movetime <ms>]
+ *      [depth <n>] [infinite] [ponder]
+ *   stop, ponderhit
+ *
+ * The search runs in the background (ParallelSearch.start) while this thread goes on
+ * reading commands, so "isready" is answered during a search and "stop" ends it within a
+ * few nodes. A second thread waits for the result and prints it with "bestmove". After
+ * "go infinite" or "go ponder" the bestmove is held back until "stop" even if the search
+ * finishes first; "ponderhit" turns a ponder search into a normal one, with the time limit
+ * from the go command counted from then on. A "go" that sets no limit at all (no clock for
+ * the side to move, movetime or depth) is taken as "go infinite", as other engines do,
+ * rather than guessing a time: the GUI ends it with "stop".
+ */
+public class UciEngine {
+
+    static final int DEFAULT_HASH = 16;
+    static final int MAX_HASH = 16384;
+    static final int MAX_THREADS = 256;
+    // Kept back from every time limit for the GUI's and the pipe's delays
+    static final long MOVE_OVERHEAD = 20;
+    // Moves the remaining time is shared out over when the GUI doesn't say (movestogo)
+    static final int DEFAULT_MOVES_TO_GO = 30;
+
+    private final BufferedReader in;
+    private final PrintStream out;
+
+    private int hashMegabytes = DEFAULT_HASH;
+    private int threads = 1;
+    private TranspositionTable tt;
+    private ParallelSearch search;
+    private Board board = Board.fromFen(Board.START_FEN);
+
+    // The running search's waiter thread, or null; only touched by the input thread
+    private Thread waiter;
+    // Guarded by this: the bestmove is held back while holding, and a ponder search gets
+    // ponderLimit (milliseconds, 0 for none) on ponderhit
+    private boolean holding;
+    private boolean pondering;
+    private long ponderLimit;
+
+    public UciEngine(BufferedReader in, PrintStream out) {
+        this.in = in;
+        this.out = out;
+    }
+
+    /**
+     * Reads and answers commands until "quit" or the end of the input.
+     */
+    public void run() throws IOException {
+        run(in.readLine());
+    }
+
+    /**
+     * Same as run, for a caller that has already read the first command (PlayChess reads
+     * "uci" to tell a GUI from a human).
+     */
+    public void run(String first) throws IOException {
+        try {
+            for (String line = first; line != null; line = in.readLine()) {
+                if (!command(line.trim().split("\\s+"))) {
+                    break;
+                }
+            }
+        } finally {
+            stopSearch();
+            if (search != null) {
+                search.shutdown();
+            }
+        }
+    }
+
+    // Handles one command; false when it was "quit"
+    private boolean command(String[] tokens) {
+        switch (tokens[0]) {
+            case "uci":
+                send("id name Chess");
+                send("id author the Chess authors");
+                send("option name Hash type spin default " + DEFAULT_HASH + " min 1 max " + MAX_HASH);
+                send("option name Threads type spin default 1 min 1 max " + MAX_THREADS);
+                send("option name Ponder type check default false");
+                send("uciok");
+                break;
+            case "isready":
+                engine();
+                send("readyok");
+                break;
+            case "setoption":
+                stopSearch();
+                setOption(tokens);
+                break;
+            case "ucinewgame":
+                stopSearch();
+                engine();
+                tt.clear();
+                break;
+            case "position":
+                stopSearch();
+                position(tokens);
+                break;
+            case "go":
+                stopSearch();
+                go(tokens);
+                break;
+            case "stop":
+                stopSearch();
+                break;
+            case "ponderhit":
+                ponderHit();
+                break;
+            case "quit":
+                return false;
+            default:
+                break;
+        }
+        return true;
+    }
+
+    // The table and the search threads, created on first use so setoption can size them first
+    private void engine() {
+        if (tt == null) {
+            tt = new TranspositionTable(hashMegabytes);
+        }
+        if (search == null) {
+            search = new ParallelSearch(tt, threads);
+            search.setEvaluator(new TaperedEvaluator());
+        }
+    }
+
+    private void setOption(String[] tokens) {
+        // setoption name <name, maybe several words> value <value>
+        StringBuilder name = new StringBuilder();
+        String value = null;
+        for (int i = 2; i < tokens.length; i++) {
+            if (tokens[i].equals("value")) {
+                value = i + 1 < tokens.length ? tokens[i + 1] : "";
+                break;
+            }
+            name.append(name.length() > 0 ? " " : "").append(tokens[i]);
+        }
+        if (value == null) {
+            return;
+        }
+        try {
+            switch (name.toString().toLowerCase()) {
+                case "hash":
+                    hashMegabytes = clamp(Integer.parseInt(value), 1, MAX_HASH);
+                    tt = null;
+                    discardSearch();
+                    break;
+                case "threads":
+                    threads = clamp(Integer.parseInt(value), 1, MAX_THREADS);
+                    discardSearch();
+                    break;
+                default:
+                    break; // Ponder needs nothing from us: the GUI decides when to ponder
+            }
+        } catch (NumberFormatException e) {
+            send("info string bad value for " + name + ": " + value);
+        }
+    }
+
+    private void discardSearch() {
+        if (search != null) {
+            search.shutdown();
+            search = null;
+        }
+    }
+
+    private void position(String[] tokens) {
+        int i = 1;
+        Board next;
+        if (tokens.length > 1 && tokens[1].equals("startpos")) {
+            next = Board.fromFen(Board.START_FEN);
+            i = 2;
+        } else if (tokens.length > 1 && tokens[1].equals("fen")) {
+            StringBuilder fen = new StringBuilder();
+            for (i = 2; i < tokens.length && !tokens[i].equals("moves"); i++) {
+                fen.append(tokens[i]).append(' ');
+            }
+            try {
+                next = Board.fromFen(fen);
+            } catch (IllegalArgumentException e) {
+                send("info string bad FEN: " + e.getMessage());
+                return;
+            }
+        } else {
+            return;
+        }
+
+        if (i < tokens.length && tokens[i].equals("moves")) {
+            for (i++; i < tokens.length; i++) {
+                int move = parseMove(next, tokens[i]);
+                if (move == 0) {
+                    send("info string illegal move " + tokens[i]);
+                    break;
+                }
+                next.makeMove(move);
+            }
+        }
+        board = next;
+    }
+
+    /**
+     * The move a coordinate string ("e2e4", "e7e8q") stands for in the position, or 0 if it
+     * is not a legal move there.
+     */
+    static int parseMove(Board board, String text) {
+        int parsed = MoveParser.parse(text);
+        if (MoveParser.isError(parsed) || parsed == MoveParser.RESIGN || MoveParser.isDrawOffer(parsed)) {
+            return 0;
+        }
+        int move = board.encodeMove(Move.from(parsed), Move.to(parsed), Move.promotion(parsed));
+        return board.isPseudoLegalMove(move) && board.isLegalMove(move) ? move : 0;
+    }
+
+    private void go(String[] tokens) {
+        long time = -1;
+        long increment = 0;
+        int movesToGo = 0;
+        long moveTime = -1;
+        int depth = 0; // Not given
+        boolean infinite = false;
+        boolean ponder = false;
+        boolean white = board.getSideToMove() == Chess.Player.white;
+        try {
+            for (int i = 1; i < tokens.length; i++) {
+                String value = i + 1 < tokens.length ? tokens[i + 1] : "";
+                switch (tokens[i]) {
+                    case "wtime": if (white) time = Long.parseLong(value); i++; break;
+                    case "btime": if (!white) time = Long.parseLong(value); i++; break;
+                    case "winc": if (white) increment = Long.parseLong(value); i++; break;
+                    case "binc": if (!white) increment = Long.parseLong(value); i++; break;
+                    case "movestogo": movesToGo = Integer.parseInt(value); i++; break;
+                    case "movetime": moveTime = Long.parseLong(value); i++; break;
+                    case "depth": depth = clamp(Integer.parseInt(value), 1, Search.MAX_PLY); i++; break;
+                    case "infinite": infinite = true; break;
+                    case "ponder": ponder = true; break;
+                    default: break;
+                }
+            }
+        } catch (NumberFormatException e) {
+            send("info string bad go command");
+            return;
+        }
+        if (time < 0 && moveTime < 0 && depth == 0 && !ponder) {
+            infinite = true; // Nothing to stop it: see the class comment
+        }
+        if (depth == 0) {
+            depth = Search.MAX_PLY;
+        }
+
+        long limit = 0;
+        if (moveTime >= 0) {
+            limit = Math.max(1, moveTime - MOVE_OVERHEAD);
+        } else if (time >= 0 && !infinite) {
+            limit = timeForMove(time, increment, movesToGo);
+        }
+
+        engine();
+        synchronized (this) {
+            holding = infinite || ponder;
+            pondering = ponder;
+            ponderLimit = limit;
+        }
+        Future<Search.Result> result = search.start(board, depth, ponder ? 0 : limit);
+        waiter = new Thread(() -> report(result), "search-waiter");
+        waiter.start();
+    }
+
+    /**
+     * Time to spend on one move: an even share of the clock over the moves to go, plus most of
+     * the increment, and never more than the clock holds less the overhead. At least 1 ms.
+     */
+    static long timeForMove(long time, long increment, int movesToGo) {
+        long share = time / (movesToGo > 0 ? movesToGo : DEFAULT_MOVES_TO_GO) + increment * 3 / 4;
+        return Math.max(1, Math.min(share, time - MOVE_OVERHEAD));
+    }
+
+    private synchronized void ponderHit() {
+        if (pondering) {
+            pondering = false;
+            holding = false;
+            // The search keeps what it has found so far and now runs against the clock
+            search.setTimeLimit(ponderLimit);
+            notifyAll();
+        }
+    }
+
+    // Ends the running search, if any, and waits until its bestmove has been printed
+    private void stopSearch() {
+        if (waiter == null) {
+            return;
+        }
+        synchronized (this) {
+            holding = false;
+            pondering = false;
+            notifyAll();
+        }
+        search.stop();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                waiter.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        waiter = null;
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Runs on the waiter thread: waits for the search, holds the answer while told to, prints it
+    private void report(Future<Search.Result> future) {
+        Search.Result result;
+        try {
+            result = future.get();
+            synchronized (this) {
+                while (holding) {
+                    wait();
+                }
+            }
+        } catch (InterruptedException e) {
+            return; // Shutting down
+        } catch (ExecutionException e) {
+            send("info string search failed: " + e.getCause());
+            send("bestmove 0000");
+            return;
+        }
+
+        StringBuilder info = new StringBuilder("info depth ").append(result.depth)
+                .append(" score ").append(scoreString(result.score))
+                .append(" nodes ").append(result.nodes)
+                .append(" nps ").append(result.nodesPerSecond())
+                .append(" time ").append(result.millis)
+                .append(" pv");
+        for (int move : result.pv) {
+            info.append(' ').append(Move.toString(move));
+        }
+        send(info.toString());
+
+        if (result.bestMove == 0) {
+            send("bestmove 0000"); // No legal move: mate or stalemate on the board already
+        } else if (result.pv.length > 1) {
+            send("bestmove " + Move.toString(result.bestMove) + " ponder " + Move.toString(result.pv[1]));
+        } else {
+            send("bestmove " + Move.toString(result.bestMove));
+        }
+    }
+
+    /**
+     * A search score in UCI terms: "cp <centipawns>", or "mate <moves>" (negative when the
+     * engine is getting mated).
+     */
+    static String scoreString(int score) {
+        if (Math.abs(score) >= Search.MATE - Search.MAX_PLY) {
+            int moves = (Search.MATE - Math.abs(score) + 1) / 2;
+            return "mate " + (score > 0 ? moves : -moves);
+        }
+        return "cp " + score;
+    }
+
+    private void send(String line) {
+        synchronized (out) {
+            out.println(line);
+            out.flush();
+        }
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
@@ -0,0 +1,62 @@
+package chess;
+
+/**
+ * Random keys for Zobrist hashing. A position's key is the XOR of the keys of everything in it:
+ * each (piece, square) pair, the side to move, the castling rights and the en passant file.
+ * Because XOR undoes itself, the Board can keep the key up to date with a few XORs per move.
+ */
+final class Zobrist {
+
+    // PIECE[color * 6 + type][square], same indexing as the Board's bitboards
+    static final long[][] PIECE = new long[12][64];
+    // XORed in when it is Black's turn
+    static final long SIDE;
+    // One key per combination of the four castling right bits
+    static final long[] CASTLING = new long[16];
+    // Only used when a pawn can actually make the en passant capture
+    static final long[] EP_FILE = new long[8];
+
+    static {
+        // Fixed seed, so keys (and anything stored by key) are the same on every run
+        long seed = 0x2545F4914F6CDD1DL;
+        for (int piece = 0; piece < 12; piece++) {
+            for (int sq = 0; sq < 64; sq++) {
+                seed = next(seed);
+                PIECE[piece][sq] = mix(seed);
+            }
+        }
+        seed = next(seed);
+        SIDE = mix(seed);
+        // Rights combine independently, so each combination is the XOR of its single-bit keys
+        long[] rightKeys = new long[4];
+        for (int i = 0; i < 4; i++) {
+            seed = next(seed);
+            rightKeys[i] = mix(seed);
+        }
+        for (int rights = 0; rights < 16; rights++) {
+            for (int i = 0; i < 4; i++) {
+                if ((rights & (1 << i)) != 0) {
+                    CASTLING[rights] ^= rightKeys[i];
+                }
+            }
+        }
+        for (int file = 0; file < 8; file++) {
+            seed = next(seed);
+            EP_FILE[file] = mix(seed);
+        }
+    }
+
+    private Zobrist() {
+    }
+
+    // splitmix64
+    private static long next(long seed) {
+        return seed + 0x9E3779B97F4A7C15L;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
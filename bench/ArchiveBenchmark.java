@@ -0,0 +1,100 @@
+package chess;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Replaying stored games (games/sec): the same random games read back from a GameArchive,
+ * and fed as move strings through a GameSession the way text games are.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ArchiveBenchmark {
+
+    static final int GAMES = 1000;
+    static final int MAX_PLIES = 160;
+
+    private Path file;
+    private GameArchive archive;
+    private String[][] text;
+    private Board board;
+
+    @Setup
+    public void setup() throws IOException {
+        file = Files.createTempFile("games", ".bin");
+        text = new String[GAMES][];
+        Random random = new Random(1);
+        Board game = new Board();
+        int[] moves = new int[MAX_PLIES];
+        int[] buffer = new int[Move.MAX_MOVES];
+        try (GameArchiveWriter writer = GameArchiveWriter.create(file)) {
+            for (int g = 0; g < GAMES; g++) {
+                game.setFen(Board.START_FEN);
+                int plies = 0;
+                int count;
+                while (plies < MAX_PLIES && (count = game.generateLegalMoves(buffer)) > 0) {
+                    moves[plies] = buffer[random.nextInt(count)];
+                    game.makeMove(moves[plies++]);
+                }
+                text[g] = new String[plies];
+                for (int i = 0; i < plies; i++) {
+                    text[g][i] = Move.toString(moves[i]);
+                }
+                writer.add(moves, plies, null, GameArchive.UNKNOWN);
+            }
+        }
+        archive = GameArchive.open(file);
+        board = new Board();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        archive.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(GAMES)
+    public long replayArchive() {
+        long hash = 0;
+        for (int g = 0; g < GAMES; g++) {
+            archive.replay(g, board);
+            hash ^= board.getZobristKey();
+        }
+        return hash;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(GAMES)
+    public long replayText() {
+        long hash = 0;
+        for (String[] moves : text) {
+            GameSession session = new GameSession();
+            for (String move : moves) {
+                session.play(move);
+            }
+            hash ^= session.getBoard().getZobristKey();
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,159 @@
+package chess;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Speed of the rules engine, measured these ways:
+ *   perft        - move generation and move making over the reference positions (nodes/sec)
+ *   isInCheck    - a single check query (calls/sec)
+ *   hasAnyLegalMove / countLegalMoves - the early-exit mate and stalemate query against
+ *                  generating every legal move (calls/sec)
+ *   playGame     - a whole game fed through Chess.play, move strings and all (moves/sec)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BoardBenchmark {
+
+    // Morphy's "Opera Game", in the input format Chess.play expects
+    static final String[] OPERA_GAME = {
+        "e2 e4", "e7 e5", "g1 f3", "d7 d6", "d2 d4", "c8 g4", "d4 e5", "g4 f3",
+        "d1 f3", "d6 e5", "f1 c4", "g8 f6", "f3 b3", "d8 e7", "b1 c3", "c7 c6",
+        "c1 g5", "b7 b5", "c3 b5", "c6 b5", "c4 b5", "b8 d7", "e1 c1", "a8 d8",
+        "d1 d7", "d8 d7", "h1 d1", "e7 e6", "b5 d7", "f6 d7", "b3 b8", "d7 b8",
+        "d1 d8"
+    };
+
+    /**
+     * Reports the number of perft leaf nodes alongside the operation count,
+     * so the results read directly as nodes/sec.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class NodeCounter {
+        public long nodes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            nodes = 0;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class PerftState {
+        // Index into Perft.CASES: the start position, kiwipete and position 3
+        @Param({"0", "1", "2"})
+        public int position;
+
+        @Param({"3"})
+        public int depth;
+
+        Perft perft;
+
+        @Setup
+        public void setup() {
+            Perft.Case c = Perft.CASES[position];
+            perft = new Perft(Board.fromFen(c.fen));
+            long nodes = perft.perft(depth);
+            if (nodes != c.expected[depth - 1]) {
+                throw new IllegalStateException(c.name + ": perft(" + depth + ") = " + nodes
+                        + ", expected " + c.expected[depth - 1]);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class CheckState {
+        Board[] boards;
+        final int[] moves = new int[Move.MAX_MOVES];
+
+        @Setup
+        public void setup() {
+            boards = new Board[Perft.CASES.length];
+            for (int i = 0; i < boards.length; i++) {
+                boards[i] = Board.fromFen(Perft.CASES[i].fen);
+            }
+        }
+    }
+
+    @Benchmark
+    public long perft(PerftState state, NodeCounter counter) {
+        long nodes = state.perft.perft(state.depth);
+        counter.nodes += nodes;
+        return nodes;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(28) // Perft.CASES.length * 2
+    public int isInCheck(CheckState state) {
+        int checks = 0;
+        for (Board board : state.boards) {
+            if (board.isInCheck(Chess.Player.white)) checks++;
+            if (board.isInCheck(Chess.Player.black)) checks++;
+        }
+        return checks;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(28) // Perft.CASES.length * 2
+    public int hasAnyLegalMove(CheckState state) {
+        int movable = 0;
+        for (Board board : state.boards) {
+            if (board.hasAnyLegalMove(Chess.Player.white)) movable++;
+            if (board.hasAnyLegalMove(Chess.Player.black)) movable++;
+        }
+        return movable;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(28) // Perft.CASES.length * 2
+    public int countLegalMoves(CheckState state) {
+        int movable = 0;
+        for (Board board : state.boards) {
+            if (board.generateLegalMoves(Chess.Player.white, state.moves) > 0) movable++;
+            if (board.generateLegalMoves(Chess.Player.black, state.moves) > 0) movable++;
+        }
+        return movable;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(33) // OPERA_GAME.length
+    public ReturnPlay playGame() {
+        Chess.start();
+        ReturnPlay last = null;
+        for (String move : OPERA_GAME) {
+            last = Chess.play(move);
+        }
+        if (last.message != ReturnPlay.Message.CHECKMATE_WHITE_WINS) {
+            throw new IllegalStateException("Opera game ended with " + last.message);
+        }
+        return last;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(33) // OPERA_GAME.length
+    public int parseMoves() {
+        int sum = 0;
+        for (String move : OPERA_GAME) {
+            sum += MoveParser.parse(move);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,94 @@
+package chess;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of a static evaluation the way a search pays for it: every legal move of a position
+ * is made, evaluated and taken back, so the numbers include the evaluators' updates.
+ *   tapered  - TaperedEvaluator with its running totals (ns per move)
+ *   nnue     - NnueEvaluator on a random network of the given hidden size (ns per move)
+ *   makeOnly - makeMove/unmakeMove alone, the part both share
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class EvaluatorBenchmark {
+
+    // Kiwipete: 48 legal moves, captures and castling among them
+    static final int MOVES = 48;
+
+    @Param({"256"})
+    public int hidden;
+
+    private Board board;
+    private final int[] moves = new int[Move.MAX_MOVES];
+    private final TaperedEvaluator tapered = new TaperedEvaluator();
+    private Board taperedBoard;
+    private NnueEvaluator nnue;
+    private Board nnueBoard;
+
+    @Setup
+    public void setup() {
+        board = Board.fromFen(Perft.CASES[1].fen);
+        if (board.generateLegalMoves(moves) != MOVES) {
+            throw new IllegalStateException("Expected " + MOVES + " moves in kiwipete");
+        }
+        taperedBoard = board.copy();
+        tapered.attach(taperedBoard);
+        nnueBoard = board.copy();
+        nnue = new NnueEvaluator(NnueNetwork.random(hidden, 1));
+        nnue.attach(nnueBoard);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MOVES)
+    public int tapered() {
+        int sum = 0;
+        for (int i = 0; i < MOVES; i++) {
+            taperedBoard.makeMove(moves[i]);
+            sum += tapered.evaluate(taperedBoard);
+            taperedBoard.unmakeMove();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MOVES)
+    public int nnue() {
+        int sum = 0;
+        for (int i = 0; i < MOVES; i++) {
+            nnueBoard.makeMove(moves[i]);
+            sum += nnue.evaluate(nnueBoard);
+            nnueBoard.unmakeMove();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MOVES)
+    public long makeOnly() {
+        long sum = 0;
+        for (int i = 0; i < MOVES; i++) {
+            board.makeMove(moves[i]);
+            sum += board.getZobristKey();
+            board.unmakeMove();
+        }
+        return sum;
+    }
+}
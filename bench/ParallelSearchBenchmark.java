@@ -0,0 +1,70 @@
+package chess;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lazy SMP time-to-depth: how long a search to a fixed depth takes with 1, 2, 4, ... threads.
+ * The speedup for N threads is the 1-thread time divided by the N-thread time.
+ * The table is cleared before every search so each one starts cold.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParallelSearchBenchmark {
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    @Param({"7"})
+    public int depth;
+
+    // Index into Perft.CASES: the start position and kiwipete
+    @Param({"0", "1"})
+    public int position;
+
+    @Param({"64"})
+    public int hashMegabytes;
+
+    private TranspositionTable tt;
+    private ParallelSearch search;
+    private Board board;
+
+    @Setup
+    public void setup() {
+        tt = new TranspositionTable(hashMegabytes);
+        search = new ParallelSearch(tt, threads);
+        board = Board.fromFen(Perft.CASES[position].fen);
+    }
+
+    @Setup(Level.Invocation)
+    public void clearTable() {
+        tt.clear();
+    }
+
+    @TearDown
+    public void tearDown() {
+        search.shutdown();
+    }
+
+    @Benchmark
+    public Search.Result timeToDepth() {
+        return search.search(board, depth, 0);
+    }
+}